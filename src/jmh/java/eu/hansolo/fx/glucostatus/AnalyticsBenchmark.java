@@ -0,0 +1,92 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import eu.hansolo.fx.glucostatus.Statistics.StatisticRange;
+import eu.hansolo.toolbox.tuples.Pair;
+import eu.hansolo.toolboxfx.geom.Point;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Baseline for parsing, statistics and the geometry of the pattern chart.
+ * Run with: ./gradlew jmh -PjmhArgs="AnalyticsBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AnalyticsBenchmark {
+    @Param({ BenchmarkData.DATASET_3_HOURS, BenchmarkData.DATASET_7_DAYS, BenchmarkData.DATASET_30_DAYS, BenchmarkData.DATASET_90_DAYS })
+    private Interval                  interval;
+    private String                    json;
+    private List<GlucoEntry>          entries;
+    private GlucoSeries.View          view;
+    private Map<LocalTime, DataPoint> dataMap;
+
+
+    @Setup public void setup() {
+        json    = new String(BenchmarkData.createJson(interval, 42), StandardCharsets.UTF_8);
+        entries = BenchmarkData.createEntries(interval, 42);
+        view    = BenchmarkData.createSeries(interval, 42).getView();
+        dataMap = Statistics.analyze(entries);
+    }
+
+    @Benchmark public List<GlucoEntry> getGlucoEntries() {
+        return Helper.getGlucoEntries(json);
+    }
+
+    @Benchmark public Map<LocalTime, DataPoint> analyze() {
+        return Statistics.analyze(entries);
+    }
+
+    @Benchmark public double calcHbA1c() {
+        return Helper.calcHbA1c(entries);
+    }
+
+    @Benchmark public double calcHbA1cView() {
+        return Helper.calcHbA1c(view);
+    }
+
+    @Benchmark public GlycemicMetrics glycemicMetrics() {
+        return GlycemicMetrics.of(view);
+    }
+
+    @Benchmark public Pair<List<Point>, List<Point>> createValueRangePath() {
+        return Helper.createValueRangePath(dataMap, StatisticRange.TEN_TO_NINETY, true);
+    }
+}
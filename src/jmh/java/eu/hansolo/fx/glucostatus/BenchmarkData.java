@@ -0,0 +1,118 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+
+/**
+ * Creates synthetic Nightscout data (one reading every 5 minutes) for the benchmarks.
+ * The datasets are 3 hours, 7 days, 30 days and 90 days (see DATASETS), the values follow
+ * a daily pattern with meal peaks, a dawn rise and some noise.
+ */
+public class BenchmarkData {
+    public  static final String   DATASET_3_HOURS = "LAST_3_HOURS";
+    public  static final String   DATASET_7_DAYS  = "LAST_168_HOURS";
+    public  static final String   DATASET_30_DAYS = "LAST_720_HOURS";
+    public  static final String   DATASET_90_DAYS = "LAST_2160_HOURS";
+    private static final String[] DIRECTIONS      = { "Flat", "FortyFiveUp", "FortyFiveDown", "SingleUp", "SingleDown" };
+    private static final double[] MEAL_HOURS      = { 7.5, 12.5, 19.0 };
+
+
+    // ******************** Constructors **************************************
+    private BenchmarkData() {}
+
+
+    // ******************** Methods *******************************************
+    // Json as returned by /api/v2/entries.json, newest entry first
+    public static byte[] createJson(final Interval interval, final long seed) {
+        final Random        rnd  = new Random(seed);
+        final long          now  = System.currentTimeMillis();
+        final double[]      sgvs = createSgvs(interval.getNoOfEntries(), now / 1000, seed);
+        final StringBuilder json = new StringBuilder(interval.getNoOfEntries() * 330).append('[');
+        for (int i = 0 ; i < sgvs.length ; i++) {
+            final long   date  = now - i * 300_000L;
+            final int    sgv   = (int) sgvs[sgvs.length - 1 - i];
+            final double delta = i < sgvs.length - 1 ? sgvs[sgvs.length - 1 - i] - sgvs[sgvs.length - 2 - i] : 0;
+            if (i > 0) { json.append(','); }
+            json.append("{\"_id\":\"").append(Long.toHexString(rnd.nextLong()))
+                .append("\",\"device\":\"xDrip-DexcomG6\",\"date\":").append(date)
+                .append(",\"dateString\":\"").append(Instant.ofEpochMilli(date))
+                .append("\",\"sgv\":").append(sgv)
+                .append(",\"delta\":").append(String.format(Locale.US, "%.3f", delta))
+                .append(",\"direction\":\"").append(DIRECTIONS[rnd.nextInt(DIRECTIONS.length)])
+                .append("\",\"type\":\"sgv\",\"filtered\":0,\"unfiltered\":0,\"rssi\":100,\"noise\":1")
+                .append(",\"sysTime\":\"").append(Instant.ofEpochMilli(date))
+                .append("\",\"utcOffset\":0,\"mills\":").append(date).append('}');
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Entries sorted by date in ascending order, the last entry is from now
+    public static List<GlucoEntry> createEntries(final Interval interval, final long seed) { return createEntries(interval.getNoOfEntries(), seed); }
+    public static List<GlucoEntry> createEntries(final int noOfEntries, final long seed) {
+        final long             now     = Instant.now().getEpochSecond();
+        final double[]         sgvs    = createSgvs(noOfEntries, now, seed);
+        final List<GlucoEntry> entries = new ArrayList<>(sgvs.length);
+        for (int i = 0 ; i < sgvs.length ; i++) {
+            final long           datelong  = now - (sgvs.length - 1 - i) * 300L;
+            final OffsetDateTime date      = OffsetDateTime.ofInstant(Instant.ofEpochSecond(datelong), ZoneId.systemDefault());
+            final double         delta     = i > 0 ? sgvs[i] - sgvs[i - 1] : 0;
+            final String         direction = Math.abs(delta) < 2 ? "Flat" : delta > 0 ? "FortyFiveUp" : "FortyFiveDown";
+            entries.add(new GlucoEntry(Long.toHexString(datelong), (int) sgvs[i], datelong, date, date.toString(), Trend.getFromText(direction), direction,
+                                       "xDrip-DexcomG6", "sgv", 0, 1, 0, 0, 100, delta, date.toString()));
+        }
+        return entries;
+    }
+
+    public static GlucoSeries createSeries(final Interval interval, final long seed) { return createSeries(interval.getNoOfEntries(), seed); }
+    public static GlucoSeries createSeries(final int noOfEntries, final long seed) {
+        final GlucoSeries series = new GlucoSeries();
+        series.addAll(createEntries(noOfEntries, seed));
+        return series;
+    }
+
+
+    // ******************** Private Methods ***********************************
+    // Values in mg/dl from oldest to newest, the last value belongs to the given end time
+    private static double[] createSgvs(final int noOfEntries, final long endEpochSeconds, final long seed) {
+        final Random   rnd   = new Random(seed);
+        final double[] sgvs  = new double[noOfEntries];
+        double         noise = 0;
+        for (int i = 0 ; i < sgvs.length ; i++) {
+            final long   datelong = endEpochSeconds - (sgvs.length - 1 - i) * 300L;
+            final double hour     = OffsetDateTime.ofInstant(Instant.ofEpochSecond(datelong), ZoneId.systemDefault()).toLocalTime().toSecondOfDay() / 3600.0;
+            double       sgv      = 110 + 15 * Math.exp(-Math.pow(hour - 5, 2) / 2); // dawn phenomenon
+            for (double mealHour : MEAL_HOURS) {
+                final double t = hour - mealHour;
+                if (t > 0 && t < 4) { sgv += 70 * t * Math.exp(1 - t); } // peak about one hour after the meal
+            }
+            noise   = 0.9 * noise + rnd.nextGaussian() * 6;
+            sgvs[i] = Math.max(40, Math.min(400, sgv + noise));
+        }
+        return sgvs;
+    }
+}
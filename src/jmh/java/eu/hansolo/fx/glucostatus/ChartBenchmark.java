@@ -0,0 +1,99 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import eu.hansolo.toolbox.unit.UnitDefinition;
+import javafx.application.Platform;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Baseline for the data preparation of the 30 day view and the stacked line chart.
+ * Redraws of the controls are deferred to the next pulse by the RedrawScheduler, so only the preparation is measured.
+ * Needs the JavaFX toolkit, on a machine without display use e.g. -Dprism.order=sw with a virtual display.
+ * Run with: ./gradlew jmh -PjmhArgs="ChartBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChartBenchmark {
+    @Param({ BenchmarkData.DATASET_3_HOURS, BenchmarkData.DATASET_7_DAYS, BenchmarkData.DATASET_30_DAYS, BenchmarkData.DATASET_90_DAYS })
+    private Interval         interval;
+    private GlucoSeries.View entries;
+    private DayIndex         dayIndex;
+    private ThirtyDayView    thirtyDayView;
+    private StackedLineChart stackedLineChart;
+    private Downsampler      downsampler;
+
+
+    @Setup public void setup() {
+        try {
+            Platform.startup(() -> {});
+        } catch (IllegalStateException e) {
+            // Toolkit already running
+        }
+        GlucoSeries series = BenchmarkData.createSeries(interval, 42);
+
+        entries          = series.getView();
+        dayIndex         = series.getDayIndex();
+        thirtyDayView    = new ThirtyDayView();
+        stackedLineChart = new StackedLineChart();
+        stackedLineChart.setEntries(UnitDefinition.MILLIGRAM_PER_DECILITER, entries);
+        downsampler      = new Downsampler();
+    }
+
+    @Benchmark public ThirtyDayView thirtyDayViewSetEntries() {
+        thirtyDayView.setEntries(entries, UnitDefinition.MILLIGRAM_PER_DECILITER);
+        return thirtyDayView;
+    }
+
+    @Benchmark public ThirtyDayView thirtyDayViewSetDayIndex() {
+        thirtyDayView.setDayIndex(dayIndex, UnitDefinition.MILLIGRAM_PER_DECILITER);
+        return thirtyDayView;
+    }
+
+    @Benchmark public StackedLineChart stackedLineChartFilter() {
+        stackedLineChart.filter();
+        return stackedLineChart;
+    }
+
+    // Envelope for a 640 pixel wide main chart without the cache
+    @Benchmark public Downsampler.Envelope downsampleMinMax() {
+        return Downsampler.minMax(entries, Math.max(1, interval.getSeconds() / 640));
+    }
+
+    @Benchmark public Downsampler.Envelope downsampleCached() {
+        return downsampler.get(interval, entries, interval.getSeconds(), 640);
+    }
+}
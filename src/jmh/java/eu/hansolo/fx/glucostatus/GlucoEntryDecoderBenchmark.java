@@ -0,0 +1,67 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Compares the String + JsonArray parsing in Helper.getGlucoEntries() with the streaming GlucoEntryDecoder.
+ * The String variant includes the byte -> String conversion that BodyHandlers.ofString() does.
+ * Run with: ./gradlew jmh -PjmhArgs="GlucoEntryDecoderBenchmark -prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GlucoEntryDecoderBenchmark {
+    @Param({ BenchmarkData.DATASET_3_HOURS, BenchmarkData.DATASET_7_DAYS, BenchmarkData.DATASET_30_DAYS, BenchmarkData.DATASET_90_DAYS })
+    private Interval interval;
+    private byte[]   json;
+
+
+    @Setup public void setup() {
+        json = BenchmarkData.createJson(interval, 42);
+    }
+
+    @Benchmark public List<GlucoEntry> stringAndJsonArray() {
+        return Helper.getGlucoEntries(new String(json, StandardCharsets.UTF_8));
+    }
+
+    @Benchmark public List<GlucoEntry> streamingDecoder() {
+        return GlucoEntryDecoder.decode(new ByteArrayInputStream(json));
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalTime;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Scaling curve of ParallelAnalytics over the number of worker threads for one and two years of readings.
+ * The sequential baselines (Statistics.analyze and DayIndex.of) show the overhead of splitting and merging.
+ * Run with: ./gradlew jmh -PjmhArgs="ParallelAnalyticsBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelAnalyticsBenchmark {
+    @Param({ "365", "730" })
+    private int               noOfDays;
+    @Param({ "1", "2", "4", "8", "16" })
+    private int               parallelism;
+    private GlucoSeries.View  view;
+    private ForkJoinPool      pool;
+    private ParallelAnalytics analytics;
+
+
+    @Setup public void setup() {
+        view      = BenchmarkData.createSeries(noOfDays * 288, 42).getView();
+        pool      = new ForkJoinPool(parallelism);
+        analytics = new ParallelAnalytics(pool);
+    }
+
+    @TearDown public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark public ParallelAnalytics.Result parallelAnalyze() {
+        return analytics.analyze(view);
+    }
+
+    @Benchmark public Map<LocalTime, DataPoint> sequentialAnalyze() {
+        return Statistics.analyze(view);
+    }
+
+    @Benchmark public DayIndex sequentialDayIndex() {
+        return DayIndex.of(view);
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package eu.hansolo.fx.glucostatus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Cost of the long interval statistics and chart data from the rollups compared to the raw entries.
+ * The rollup based queries should stay flat while the history grows.
+ * Run with: ./gradlew jmh -PjmhArgs="TieredHistoryBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TieredHistoryBenchmark {
+    @Param({ "365", "730", "1460" })
+    private int              noOfDays;
+    private Path             path;
+    private EntryStore       store;
+    private GlucoSeries.View view;
+    private TieredHistory    history;
+    private long             from;
+
+
+    @Setup public void setup() throws IOException {
+        path = Files.createTempFile("glucostatusfx-benchmark", EntryStore.FILE_SUFFIX);
+        Files.delete(path);
+        store = new EntryStore(path);
+        store.append(BenchmarkData.createEntries(noOfDays * 288, 42));
+        view    = BenchmarkData.createSeries(noOfDays * 288, 42).getView();
+        history = new TieredHistory();
+        history.compact(store);
+        from    = Instant.now().getEpochSecond() - noOfDays * 86_400L;
+    }
+
+    @TearDown public void tearDown() throws IOException {
+        store.close();
+        Files.deleteIfExists(path);
+    }
+
+    @Benchmark public IntervalAggregates.Aggregate tieredAggregate() {
+        return history.getAggregate(Interval.ALL, from, view);
+    }
+
+    @Benchmark public double rawAverage() {
+        return view.since(from).average();
+    }
+
+    @Benchmark public GlucoSeries.View tieredChartView() {
+        return history.getView(TieredHistory.selectResolution(noOfDays * 86_400L, 640), from);
+    }
+
+    @Benchmark public TieredHistory compactUpToDate() {
+        history.compact(store);
+        return history;
+    }
+}
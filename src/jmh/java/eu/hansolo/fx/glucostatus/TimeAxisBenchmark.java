@@ -0,0 +1,83 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Cost of the hour ticks and nights of the main chart, computed from the zone transitions
+ * compared to the former loop over every second of the visible range.
+ * Run with: ./gradlew jmh -PjmhArgs="TimeAxisBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimeAxisBenchmark {
+    @Param({ "LAST_24_HOURS", "LAST_168_HOURS", "LAST_336_HOURS" })
+    private Interval interval;
+    private TimeAxis timeAxis;
+    private long     from;
+    private long     to;
+
+
+    @Setup public void setup() {
+        timeAxis = new TimeAxis();
+        to       = Instant.now().getEpochSecond();
+        from     = to - interval.getSeconds();
+    }
+
+    @Benchmark public List<TimeAxis.Tick> hourTicks() {
+        return timeAxis.getHourTicks(from, to, 1);
+    }
+
+    @Benchmark public List<TimeAxis.Band> nights() {
+        return timeAxis.getNights(from, to);
+    }
+
+    @Benchmark public int perSecondLoop() {
+        int changes  = 0;
+        int lastHour = -1;
+        for (long i = from ; i <= to ; i++) {
+            int h = ZonedDateTime.ofInstant(Instant.ofEpochSecond(i), ZoneId.systemDefault()).getHour();
+            if (h != lastHour) { changes++; }
+            lastHour = h;
+        }
+        return changes;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import eu.hansolo.fx.glucostatus.Statistics.StatisticCalculation;
+import eu.hansolo.fx.glucostatus.Statistics.StatisticRange;
+import eu.hansolo.toolbox.tuples.Pair;
+import eu.hansolo.toolboxfx.geom.Point;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+
+/**
+ * Immutable result of all analyses for one state of the entries. It is created once per change
+ * of the entries (off the FX thread) and shared by the main view and all dialogs, so opening a
+ * dialog doesn't compute anything. For every Interval it holds the entries, the aggregate and the
+ * glycemic metrics, for the intervals of the pattern chart also the time of day buckets and
+ * the smoothed paths of the pattern chart, so the dialog only has to draw them.
+ */
+public final class AnalysisSnapshot {
+    public  static final AnalysisSnapshot                EMPTY = new AnalysisSnapshot(0, GlucoSeries.View.EMPTY, DayIndex.EMPTY, 0, Interval.LAST_2160_HOURS.getSeconds(), new EnumMap<>(Interval.class));
+    private        final long                            timestamp;
+    private        final GlucoSeries.View                view;
+    private        final DayIndex                        dayIndex;
+    private        final double                          hba1c;
+    private        final long                            rawHorizonSeconds;
+    private        final Map<Interval, IntervalAnalysis> intervals;
+
+
+    // ******************** Constructors **************************************
+    private AnalysisSnapshot(final long timestamp, final GlucoSeries.View view, final DayIndex dayIndex, final double hba1c, final long rawHorizonSeconds, final Map<Interval, IntervalAnalysis> intervals) {
+        this.timestamp         = timestamp;
+        this.view              = view;
+        this.dayIndex          = dayIndex;
+        this.hba1c             = hba1c;
+        this.rawHorizonSeconds = rawHorizonSeconds;
+        this.intervals         = Collections.unmodifiableMap(intervals);
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Analyzes the current entries for all intervals. Aggregates and pattern sketches are
+     * updated incrementally, so this should always be called from the same thread.
+     * @param series all raw entries
+     * @param aggregates rolling aggregates of the raw entries
+     * @param history rollups for the intervals beyond the raw horizon
+     * @param patternSketches time of day sketches per interval, missing ones will be created
+     * @param rawHorizonSeconds time range of the raw entries in seconds
+     * @return a new snapshot
+     */
+    public static AnalysisSnapshot create(final GlucoSeries series, final IntervalAggregates aggregates, final TieredHistory history, final Map<Interval, PatternSketch> patternSketches, final long rawHorizonSeconds) {
+        final long             now  = Instant.now().getEpochSecond();
+        final GlucoSeries.View view = series.getView();
+        aggregates.update(view);
+
+        final Map<Interval, IntervalAnalysis> intervals = new EnumMap<>(Interval.class);
+        GlucoSeries.View lastEntries = null;
+        GlycemicMetrics  lastMetrics = null;
+        for (Interval interval : Interval.values()) {
+            final long                         from      = now - interval.getSeconds() + 1;
+            final GlucoSeries.View             entries   = view.since(from);
+            final IntervalAggregates.Aggregate aggregate = interval.getSeconds() <= rawHorizonSeconds ? aggregates.get(interval) : history.getAggregate(interval, from, view);
+            // Intervals beyond the raw horizon contain the same entries, their metrics are only computed once
+            final GlycemicMetrics              metrics   = null != lastEntries && lastEntries.size() == entries.size() ? lastMetrics : GlycemicMetrics.of(entries);
+
+            Map<LocalTime, DataPoint> pattern      = null;
+            double                    valueError   = 0;
+            PatternPaths              patternPaths = PatternPaths.EMPTY;
+            if (interval == getPatternInterval(interval, rawHorizonSeconds)) {
+                final PatternSketch patternSketch = patternSketches.computeIfAbsent(interval, PatternSketch::new).update(view);
+                pattern      = Collections.unmodifiableMap(patternSketch.getDataMap());
+                valueError   = patternSketch.getValueError();
+                patternPaths = PatternPaths.of(pattern);
+            }
+            intervals.put(interval, new IntervalAnalysis(interval, entries, aggregate, metrics, pattern, valueError, patternPaths));
+            lastEntries = entries;
+            lastMetrics = metrics;
+        }
+        return new AnalysisSnapshot(now, view, series.getDayIndex(), Helper.calcHbA1c(view), rawHorizonSeconds, intervals);
+    }
+
+    // The pattern chart needs at least 7 days and can only use raw entries
+    public static Interval getPatternInterval(final Interval interval, final long rawHorizonSeconds) {
+        if (interval.getHours() < Interval.LAST_168_HOURS.getHours()) { return Interval.LAST_168_HOURS; }
+        if (interval.getSeconds() > rawHorizonSeconds)                  { return Interval.LAST_2160_HOURS; }
+        return interval;
+    }
+
+    public boolean isEmpty() { return view.isEmpty(); }
+
+    // Time of creation in epoch seconds
+    public long getTimestamp() { return timestamp; }
+
+    // All raw entries
+    public GlucoSeries.View getView() { return view; }
+
+    public DayIndex getDayIndex() { return dayIndex; }
+
+    // HbA1c of all raw entries
+    public double getHbA1c() { return hba1c; }
+
+    public IntervalAnalysis get(final Interval interval) {
+        final IntervalAnalysis analysis = intervals.get(interval);
+        return null == analysis ? IntervalAnalysis.empty(interval) : analysis;
+    }
+
+    // Analysis of the interval that is shown in the pattern chart for the given interval
+    public IntervalAnalysis getPattern(final Interval interval) { return get(getPatternInterval(interval, rawHorizonSeconds)); }
+
+
+    // ******************** Inner Classes *************************************
+    public record IntervalAnalysis(Interval interval, GlucoSeries.View entries, IntervalAggregates.Aggregate aggregate, GlycemicMetrics metrics, Map<LocalTime, DataPoint> pattern, double patternValueError,
+                                   PatternPaths patternPaths) {
+        static IntervalAnalysis empty(final Interval interval) {
+            return new IntervalAnalysis(interval, GlucoSeries.View.EMPTY, new IntervalAggregates.Aggregate(interval, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0), GlycemicMetrics.EMPTY, Map.of(), 0, PatternPaths.EMPTY);
+        }
+
+        public boolean hasPattern() { return null != pattern; }
+    }
+
+    // Smoothed 10% to 90% envelope (max points from left to right, min points from right to left) and median of the pattern chart in minutes of the day and mg/dl
+    public record PatternPaths(List<Point> maxPoints, List<Point> minPoints, List<Point> medianPoints) {
+        public static final PatternPaths EMPTY = new PatternPaths(List.of(), List.of(), List.of());
+
+        static PatternPaths of(final Map<LocalTime, DataPoint> dataMap) {
+            if (null == dataMap || dataMap.isEmpty()) { return EMPTY; }
+            final Pair<List<Point>, List<Point>> range = Helper.createValueRangePath(dataMap, StatisticRange.TEN_TO_NINETY, true);
+            return new PatternPaths(List.copyOf(range.getA()), List.copyOf(range.getB()), List.copyOf(Helper.createAveragePath(dataMap, StatisticCalculation.MEDIAN, true)));
+        }
+
+        public boolean isEmpty() { return maxPoints.isEmpty() || minPoints.isEmpty() || medianPoints.isEmpty(); }
+    }
+}
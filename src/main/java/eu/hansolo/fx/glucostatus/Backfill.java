@@ -0,0 +1,186 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Fetches a longer time range in chunks (one day by default) with a limited number of
+ * concurrent requests. Failed chunks are retried on their own, the results are merged
+ * in chronological order. Chunks that still fail after all retries are missing in the
+ * result, getFailedFrom() and getFailedTo() return the range that contains all of them.
+ */
+public class Backfill {
+    public  static final long          DEFAULT_CHUNK_SECONDS = Interval.LAST_24_HOURS.getSeconds();
+    public  static final int           DEFAULT_PARALLELISM   = 4;
+    public  static final int           DEFAULT_MAX_RETRIES   = 3;
+    private static final long          RETRY_DELAY_MS        = 1_000;
+    private final        String        nightscoutUrl;
+    private final        String        apiSecret;
+    private final        String        token;
+    private final        long          chunkSeconds;
+    private final        int           parallelism;
+    private final        int           maxRetries;
+    private final        AtomicLong    bytesReceived;
+    private final        AtomicLong    noOfRequests;
+    private final        AtomicInteger noOfFailedChunks;
+    private final        AtomicLong    failedFrom;
+    private final        AtomicLong    failedTo;
+
+
+    // ******************** Constructors **************************************
+    public Backfill(final String nightscoutUrl, final String apiSecret, final String token) {
+        this(nightscoutUrl, apiSecret, token, DEFAULT_CHUNK_SECONDS, DEFAULT_PARALLELISM, DEFAULT_MAX_RETRIES);
+    }
+    public Backfill(final String nightscoutUrl, final String apiSecret, final String token, final long chunkSeconds, final int parallelism, final int maxRetries) {
+        this.nightscoutUrl    = nightscoutUrl;
+        this.apiSecret        = apiSecret;
+        this.token            = token;
+        this.chunkSeconds     = Math.max(Constants.SECONDS_PER_HOUR, chunkSeconds);
+        this.parallelism      = Math.max(1, parallelism);
+        this.maxRetries       = Math.max(0, maxRetries);
+        this.bytesReceived    = new AtomicLong(0);
+        this.noOfRequests     = new AtomicLong(0);
+        this.noOfFailedChunks = new AtomicInteger(0);
+        this.failedFrom       = new AtomicLong(Long.MAX_VALUE);
+        this.failedTo         = new AtomicLong(Long.MIN_VALUE);
+    }
+
+
+    // ******************** Methods *******************************************
+    public long getBytesReceived() { return bytesReceived.get(); }
+
+    public long getNoOfRequests() { return noOfRequests.get(); }
+
+    // Number of chunks that could not be fetched even after all retries
+    public int getNoOfFailedChunks() { return noOfFailedChunks.get(); }
+
+    // Start of the oldest chunk that could not be fetched in epoch seconds, Long.MAX_VALUE if all chunks have been fetched
+    public long getFailedFrom() { return failedFrom.get(); }
+
+    // End of the newest chunk that could not be fetched in epoch seconds (exclusive), Long.MIN_VALUE if all chunks have been fetched
+    public long getFailedTo() { return failedTo.get(); }
+
+    /**
+     * Fetches all entries with from <= datelong < to
+     * @param fromEpochSeconds start of the range in epoch seconds
+     * @param toEpochSeconds end of the range in epoch seconds
+     * @return the entries sorted by date in ascending order
+     */
+    public CompletableFuture<List<GlucoEntry>> fetch(final long fromEpochSeconds, final long toEpochSeconds) {
+        if (toEpochSeconds <= fromEpochSeconds) { return CompletableFuture.completedFuture(new ArrayList<>()); }
+
+        final List<long[]>       chunks    = createChunks(fromEpochSeconds, toEpochSeconds);
+        final List<GlucoEntry>[] results   = new List[chunks.size()];
+        final AtomicInteger      nextChunk = new AtomicInteger(0);
+
+        // Each worker fetches one chunk after the other until all chunks are taken
+        final CompletableFuture<?>[] workers = new CompletableFuture[Math.min(parallelism, chunks.size())];
+        for (int i = 0 ; i < workers.length ; i++) { workers[i] = fetchNext(chunks, results, nextChunk); }
+
+        return CompletableFuture.allOf(workers).thenApply(v -> {
+            final List<GlucoEntry> entries = new ArrayList<>();
+            for (List<GlucoEntry> result : results) {
+                if (null != result) { entries.addAll(result); }
+            }
+            return entries;
+        });
+    }
+
+
+    // ******************** Private Methods ***********************************
+    // Newest chunk first, so the most relevant data is requested first
+    private List<long[]> createChunks(final long fromEpochSeconds, final long toEpochSeconds) {
+        final List<long[]> chunks = new ArrayList<>();
+        for (long end = toEpochSeconds ; end > fromEpochSeconds ; end -= chunkSeconds) {
+            chunks.add(new long[] { Math.max(fromEpochSeconds, end - chunkSeconds), end });
+        }
+        return chunks;
+    }
+
+    private CompletableFuture<Void> fetchNext(final List<long[]> chunks, final List<GlucoEntry>[] results, final AtomicInteger nextChunk) {
+        final int index = nextChunk.getAndIncrement();
+        if (index >= chunks.size()) { return CompletableFuture.completedFuture(null); }
+        final long[] chunk = chunks.get(index);
+        return fetchChunk(chunk[0], chunk[1], 0).thenCompose(entries -> {
+            // Chunks are created from newest to oldest, results are stored from oldest to newest
+            results[chunks.size() - 1 - index] = entries;
+            return fetchNext(chunks, results, nextChunk);
+        });
+    }
+
+    private CompletableFuture<List<GlucoEntry>> fetchChunk(final long from, final long to, final int attempt) {
+        noOfRequests.incrementAndGet();
+        return Helper.getInputStreamAsync(createUrl(from, to), apiSecret).handle((response, throwable) -> {
+            if (null != throwable || null == response || null == response.body() || response.statusCode() != 200) {
+                close(response);
+                return null;
+            }
+            // An incomplete response counts as failed attempt
+            final CountingInputStream inputStream = new CountingInputStream(response.body());
+            try {
+                final List<GlucoEntry> entries = GlucoEntryDecoder.decode(inputStream);
+                entries.sort(Comparator.comparingLong(GlucoEntry::datelong));
+                return entries;
+            } catch (UncheckedIOException e) {
+                System.out.println(e.getMessage() + ". " + e.getCause());
+                close(response);
+                return null;
+            } finally {
+                bytesReceived.addAndGet(inputStream.getCount());
+            }
+        }).thenCompose(entries -> {
+            if (null != entries) { return CompletableFuture.completedFuture(entries); }
+            if (attempt < maxRetries) {
+                // Retry only this chunk after a short delay that grows with every attempt
+                return CompletableFuture.supplyAsync(() -> null, CompletableFuture.delayedExecutor(RETRY_DELAY_MS * (attempt + 1), TimeUnit.MILLISECONDS))
+                                        .thenCompose(v -> fetchChunk(from, to, attempt + 1));
+            }
+            noOfFailedChunks.incrementAndGet();
+            failedFrom.accumulateAndGet(from, Math::min);
+            failedTo.accumulateAndGet(to, Math::max);
+            System.out.println("Error fetching entries from " + from + " to " + to + " after " + (attempt + 1) + " attempts");
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        });
+    }
+
+    private String createUrl(final long from, final long to) {
+        // Allow one reading per minute, the count is only an upper limit
+        final long          count      = (to - from) / 60 + 1;
+        final StringBuilder urlBuilder = new StringBuilder().append(nightscoutUrl).append("?find[date][$gte]=").append(from * 1000).append("&find[date][$lt]=").append(to * 1000).append("&count=").append(count);
+        if (null != token && !token.isEmpty()) { urlBuilder.append("&token=").append(token); }
+        return urlBuilder.toString();
+    }
+
+    private static void close(final HttpResponse<InputStream> response) {
+        if (null == response || null == response.body()) { return; }
+        try { response.body().close(); } catch (IOException e) { }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.net.http.HttpResponse.ResponseInfo;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+
+/**
+ * Body handlers that transparently decompress gzip and deflate encoded responses.
+ * The InputStream variant decompresses while the body is read, so the entries can
+ * be decoded without keeping the whole (uncompressed) response in memory.
+ * Brotli is not supported by the JDK and therefore not requested.
+ */
+public class ContentDecoding {
+    public  static final String     ACCEPT_ENCODING   = "gzip, deflate";
+    private static final int        BUFFER_SIZE       = 8_192;
+    private static final AtomicLong compressedBytes   = new AtomicLong(0);
+    private static final AtomicLong uncompressedBytes = new AtomicLong(0);
+
+
+    // ******************** Constructors **************************************
+    private ContentDecoding() {}
+
+
+    // ******************** Methods *******************************************
+    // Bytes received over the wire (equals the uncompressed bytes for responses without encoding)
+    public static long getCompressedBytes() { return compressedBytes.get(); }
+
+    // Bytes after decompression
+    public static long getUncompressedBytes() { return uncompressedBytes.get(); }
+
+    public static BodyHandler<InputStream> ofInputStream() {
+        return responseInfo -> {
+            final String encoding = getEncoding(responseInfo);
+            return BodySubscribers.mapping(BodySubscribers.ofInputStream(), inputStream -> new DecodingInputStream(inputStream, encoding));
+        };
+    }
+
+    // Decodes the text with the charset of the Content-Type header, UTF-8 if there is none
+    public static BodyHandler<String> ofString() {
+        return responseInfo -> {
+            final String  encoding = getEncoding(responseInfo);
+            final Charset charset  = getCharset(responseInfo);
+            return BodySubscribers.mapping(BodySubscribers.ofByteArray(), bytes -> {
+                try (InputStream inputStream = new DecodingInputStream(new ByteArrayInputStream(bytes), encoding)) {
+                    return new String(inputStream.readAllBytes(), charset);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        };
+    }
+
+
+    // ******************** Private Methods ***********************************
+    private static String getEncoding(final ResponseInfo responseInfo) {
+        return responseInfo.headers().firstValue("Content-Encoding").orElse("identity").trim().toLowerCase(Locale.ROOT);
+    }
+
+    // Charset parameter of the Content-Type header (e.g. text/plain; charset=ISO-8859-1), UTF-8 if it's missing or unknown
+    private static Charset getCharset(final ResponseInfo responseInfo) {
+        final String contentType = responseInfo.headers().firstValue("Content-Type").orElse("");
+        for (String parameter : contentType.split(";")) {
+            final String[] nameAndValue = parameter.split("=", 2);
+            if (nameAndValue.length < 2 || !nameAndValue[0].trim().equalsIgnoreCase("charset")) { continue; }
+            final String name = nameAndValue[1].trim().replace("\"", "");
+            try {
+                return Charset.forName(name);
+            } catch (IllegalCharsetNameException | UnsupportedCharsetException e) {
+                System.out.println("Error unknown charset " + name + ", using UTF-8");
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+
+    // ******************** Inner Classes *************************************
+    // Creates the decompressing stream on the first read, because GZIPInputStream already reads the header in its constructor
+    private static class DecodingInputStream extends InputStream {
+        private final CountingInputStream source;
+        private final String              encoding;
+        private       InputStream         decoded;
+        private       long                lastCount;
+
+
+        // ******************** Constructors **********************************
+        DecodingInputStream(final InputStream inputStream, final String encoding) {
+            this.source    = new CountingInputStream(inputStream);
+            this.encoding  = encoding;
+            this.lastCount = 0;
+        }
+
+
+        // ******************** Methods ***************************************
+        @Override public int read() throws IOException {
+            final int b = getDecoded().read();
+            update(b >= 0 ? 1 : 0);
+            return b;
+        }
+
+        @Override public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+            final int n = getDecoded().read(buffer, offset, length);
+            update(Math.max(0, n));
+            return n;
+        }
+
+        @Override public int available() throws IOException { return null == decoded ? 0 : decoded.available(); }
+
+        @Override public void close() throws IOException {
+            if (null == decoded) {
+                source.close();
+            } else {
+                decoded.close();
+            }
+        }
+
+        private InputStream getDecoded() throws IOException {
+            if (null == decoded) {
+                decoded = switch (encoding) {
+                    case "gzip", "x-gzip" -> new GZIPInputStream(source, BUFFER_SIZE);
+                    case "deflate"        -> new InflaterInputStream(source);
+                    default               -> source;
+                };
+            }
+            return decoded;
+        }
+
+        private void update(final int noOfBytes) {
+            final long count = source.getCount();
+            compressedBytes.addAndGet(count - lastCount);
+            uncompressedBytes.addAndGet(noOfBytes);
+            lastCount = count;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+
+// Counts the bytes that have been read from the wrapped stream
+class CountingInputStream extends FilterInputStream {
+    private long count;
+
+
+    // ******************** Constructors **************************************
+    CountingInputStream(final InputStream inputStream) { super(inputStream); }
+
+
+    // ******************** Methods *******************************************
+    @Override public int read() throws IOException {
+        final int b = super.read();
+        if (b >= 0) { count++; }
+        return b;
+    }
+
+    @Override public int read(final byte[] buffer, final int offset, final int length) throws IOException {
+        final int n = super.read(buffer, offset, length);
+        if (n > 0) { count += n; }
+        return n;
+    }
+
+    long getCount() { return count; }
+}
@@ -0,0 +1,145 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import eu.hansolo.fx.glucostatus.ThresholdProfile.Zone;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+
+/**
+ * Immutable per day summary (count, sum, time in range, min and max) keyed by the epoch day
+ * in the system time zone. GlucoSeries keeps the index up to date while entries are added
+ * or removed, so views that show one value per day only have to read one summary per day.
+ * The time in range counts use the normal range of the given ThresholdProfile.
+ */
+public final class DayIndex {
+    public  static final DayIndex                       EMPTY = new DayIndex(new TreeMap<>(), null);
+    private        final NavigableMap<Long, DaySummary> days;
+    private        final ThresholdProfile               profile;
+
+
+    // ******************** Constructors **************************************
+    DayIndex(final NavigableMap<Long, DaySummary> days, final ThresholdProfile profile) {
+        this.days    = Collections.unmodifiableNavigableMap(days);
+        this.profile = profile;
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Creates an index from the given entries in one pass
+     * @param entries entries in any order
+     * @return the index for the current ThresholdProfile
+     */
+    public static DayIndex of(final List<GlucoEntry> entries) {
+        final ThresholdProfile profile = ThresholdProfile.getCurrent();
+        if (null == entries || entries.isEmpty()) { return new DayIndex(new TreeMap<>(), profile); }
+        final NavigableMap<Long, DaySummary> days      = new TreeMap<>();
+        final GlucoSeries.View               view      = entries instanceof GlucoSeries.View v ? v : null;
+        long                                 dayStart  = Long.MAX_VALUE;
+        long                                 dayEnd    = Long.MIN_VALUE;
+        DaySummary                           summary   = null;
+        for (int i = 0 ; i < entries.size() ; i++) {
+            final long   datelong = null == view ? entries.get(i).datelong() : view.getDatelong(i);
+            final double sgv      = null == view ? entries.get(i).sgv()      : view.getSgv(i);
+            // Entries are usually sorted, so the map only has to be accessed when the day changes
+            if (datelong < dayStart || datelong >= dayEnd) {
+                if (null != summary) { days.put(summary.epochDay(), summary); }
+                final long epochDay = toEpochDay(datelong);
+                dayStart = getStartOfDay(epochDay);
+                dayEnd   = getStartOfDay(epochDay + 1);
+                summary  = days.get(epochDay);
+                if (null == summary) { summary = new DaySummary(epochDay, 0, 0, 0, Double.MAX_VALUE, -Double.MAX_VALUE); }
+            }
+            summary = summary.add(sgv, Zone.NORMAL == profile.getZone(sgv));
+        }
+        days.put(summary.epochDay(), summary);
+        return new DayIndex(days, profile);
+    }
+
+    public int size() { return days.size(); }
+
+    public boolean isEmpty() { return days.isEmpty(); }
+
+    // The ThresholdProfile that has been used for the time in range counts
+    public ThresholdProfile getProfile() { return profile; }
+
+    // Returns null if there is no entry for the given date
+    public DaySummary get(final LocalDate date) { return days.get(date.toEpochDay()); }
+
+    // All days with entries in [from, to] in ascending order
+    public List<DaySummary> getDays(final LocalDate from, final LocalDate to) {
+        if (from.isAfter(to)) { return new ArrayList<>(); }
+        return new ArrayList<>(days.subMap(from.toEpochDay(), true, to.toEpochDay(), true).values());
+    }
+
+    public List<DaySummary> getDays() { return new ArrayList<>(days.values()); }
+
+    public static long toEpochDay(final long epochSeconds) {
+        final Instant instant = Instant.ofEpochSecond(epochSeconds);
+        return Math.floorDiv(epochSeconds + ZoneId.systemDefault().getRules().getOffset(instant).getTotalSeconds(), 24 * Constants.SECONDS_PER_HOUR);
+    }
+
+    // Start of the given epoch day in the system time zone in epoch seconds
+    public static long getStartOfDay(final long epochDay) { return LocalDate.ofEpochDay(epochDay).atStartOfDay(ZoneId.systemDefault()).toEpochSecond(); }
+
+    // Summary of all entries of the given view, which should only contain entries of the given day
+    static DaySummary summarize(final long epochDay, final GlucoSeries.View view, final ThresholdProfile profile) {
+        double sum     = 0;
+        int    inRange = 0;
+        double min     = Double.MAX_VALUE;
+        double max     = -Double.MAX_VALUE;
+        for (int i = 0 ; i < view.size() ; i++) {
+            final double sgv = view.getSgv(i);
+            sum += sgv;
+            if (Zone.NORMAL == profile.getZone(sgv)) { inRange++; }
+            if (sgv < min) { min = sgv; }
+            if (sgv > max) { max = sgv; }
+        }
+        return new DaySummary(epochDay, view.size(), sum, inRange, min, max);
+    }
+
+
+    // ******************** Inner Classes *************************************
+    public record DaySummary(long epochDay, int count, double sum, int inRange, double min, double max) {
+
+        public LocalDate getDate() { return LocalDate.ofEpochDay(epochDay); }
+
+        public double getAverage() { return 0 == count ? 0 : sum / count; }
+
+        // Fraction of the readings in the normal range (0 - 1)
+        public double getTimeInRange() { return 0 == count ? 0 : (double) inRange / count; }
+
+        DaySummary merge(final DaySummary other) {
+            return new DaySummary(epochDay, count + other.count, sum + other.sum, inRange + other.inRange, Math.min(min, other.min), Math.max(max, other.max));
+        }
+
+        DaySummary add(final double sgv, final boolean isInRange) {
+            return new DaySummary(epochDay, count + 1, sum + sgv, isInRange ? inRange + 1 : inRange, Math.min(min, sgv), Math.max(max, sgv));
+        }
+    }
+}
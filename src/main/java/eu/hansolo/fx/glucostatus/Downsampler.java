@@ -0,0 +1,109 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Reduces a series to at most two points per pixel column for the line charts. Every column
+ * keeps the lowest and the highest reading in their original order, so lows and highs stay
+ * visible no matter how long the history is. The columns are aligned to the epoch, which
+ * means the result stays valid while the chart moves with the time and only has to be
+ * computed again when new data arrives or the width changes.
+ */
+public class Downsampler {
+    private static final int                MAX_CACHED_ENVELOPES = 16;
+    private        final Map<Key, Envelope> cache;
+
+
+    // ******************** Constructors **************************************
+    public Downsampler() {
+        cache = new LinkedHashMap<>(MAX_CACHED_ENVELOPES, 0.75f, true) {
+            @Override protected boolean removeEldestEntry(final Map.Entry<Key, Envelope> eldest) { return size() > MAX_CACHED_ENVELOPES; }
+        };
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Returns the min/max envelope of the given entries, cached per interval and width
+     * @param interval the interval that is shown
+     * @param entries the entries sorted by date in ascending order
+     * @param seconds the time range of the chart in seconds
+     * @param width the available width of the chart in pixels
+     * @return at most two points per pixel column
+     */
+    public synchronized Envelope get(final Interval interval, final GlucoSeries.View entries, final long seconds, final double width) {
+        final int pixels = Math.max(1, (int) width);
+        final Key key    = new Key(interval, pixels, entries.size(), entries.getFirstTimestamp(), entries.getLastTimestamp());
+        return cache.computeIfAbsent(key, k -> minMax(entries, Math.max(1, (long) Math.ceil((double) seconds / pixels))));
+    }
+
+    public synchronized void clear() { cache.clear(); }
+
+    /**
+     * Keeps the lowest and the highest reading of every bucket in their original order
+     * @param entries the entries sorted by date in ascending order
+     * @param bucketSeconds the time range of one bucket in seconds
+     * @return the reduced entries in ascending order
+     */
+    public static Envelope minMax(final GlucoSeries.View entries, final long bucketSeconds) {
+        final int     size      = entries.size();
+        final long    buckets   = size == 0 ? 0 : Math.floorDiv(entries.getLastTimestamp(), bucketSeconds) - Math.floorDiv(entries.getFirstTimestamp(), bucketSeconds) + 1;
+        final long[]  datelongs = new long[(int) Math.min(size, 2 * buckets)];
+        final float[] sgvs      = new float[datelongs.length];
+        int count = 0;
+        int i     = 0;
+        while (i < size) {
+            final long bucket = Math.floorDiv(entries.getDatelong(i), bucketSeconds);
+            int minIndex = i;
+            int maxIndex = i;
+            int j        = i + 1;
+            for ( ; j < size && Math.floorDiv(entries.getDatelong(j), bucketSeconds) == bucket ; j++) {
+                final double sgv = entries.getSgv(j);
+                if (sgv < entries.getSgv(minIndex)) { minIndex = j; }
+                if (sgv > entries.getSgv(maxIndex)) { maxIndex = j; }
+            }
+            final int first  = Math.min(minIndex, maxIndex);
+            final int second = Math.max(minIndex, maxIndex);
+            datelongs[count] = entries.getDatelong(first);
+            sgvs[count++]    = (float) entries.getSgv(first);
+            if (second != first) {
+                datelongs[count] = entries.getDatelong(second);
+                sgvs[count++]    = (float) entries.getSgv(second);
+            }
+            i = j;
+        }
+        return new Envelope(datelongs, sgvs, count);
+    }
+
+
+    // ******************** Inner Classes *************************************
+    public record Envelope(long[] datelongs, float[] sgvs, int size) {
+        public long getDatelong(final int index) { return datelongs[index]; }
+
+        public double getSgv(final int index) { return sgvs[index]; }
+
+        public boolean isEmpty() { return size == 0; }
+    }
+
+    private record Key(Interval interval, int pixels, int size, long firstTimestamp, long lastTimestamp) {}
+}
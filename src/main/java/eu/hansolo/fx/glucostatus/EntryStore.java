@@ -0,0 +1,305 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+
+/**
+ * Append only, memory mapped store that keeps the glucose history between runs.
+ * Records have a fixed size and are sorted by datelong, so lookups are a binary search in the mapped file.
+ * Merged records are written next to the current ones and the header is switched over to them
+ * afterwards, so the stored records are never overwritten while they are still in use.
+ */
+public class EntryStore implements Closeable {
+    public  static final String FILE_PREFIX         = "glucostatusfx-";
+    public  static final String FILE_SUFFIX         = ".entries";
+    private static final int    MAGIC               = 0x47534658; // GSFX
+    private static final int    VERSION             = 2;
+    private static final int    HEADER_SIZE         = 32;  // magic(4), version(4), count(4), first(4), synced from(8), synced until(8)
+    private static final int    RECORD_SIZE         = 16;  // datelong(8), sgv(4), trend(1), direction(1), reserved(2)
+    private static final int    COUNT_OFFSET        = 8;
+    private static final int    FIRST_OFFSET        = 12;  // slot of the first record, 0 in files that have never been merged
+    private static final int    SYNCED_FROM_OFFSET  = 16;  // the store contains all entries between synced from and synced until
+    private static final int    SYNCED_UNTIL_OFFSET = 24;
+    private static final int    GROWTH              = Interval.LAST_720_HOURS.getNoOfEntries() * RECORD_SIZE;
+    private final        Path             path;
+    private              FileChannel      channel;
+    private              MappedByteBuffer buffer;
+    private              int              first;
+    private              int              count;
+
+
+    // ******************** Constructors **************************************
+    public EntryStore(final String nightscoutUrl) {
+        this(Paths.get(Constants.HOME_FOLDER, FILE_PREFIX + Integer.toHexString(null == nightscoutUrl ? 0 : nightscoutUrl.hashCode()) + FILE_SUFFIX));
+    }
+    public EntryStore(final Path path) {
+        this.path = path;
+        open();
+    }
+
+
+    // ******************** Methods *******************************************
+    public Path getPath() { return path; }
+
+    public synchronized int size() { return count; }
+
+    public synchronized boolean isEmpty() { return 0 == count; }
+
+    public synchronized long getFirstTimestamp() { return 0 == count ? 0 : getDatelong(0); }
+
+    public synchronized long getLastTimestamp() { return 0 == count ? 0 : getDatelong(count - 1); }
+
+    // Start of the range that has been synced completely in epoch seconds, 0 if nothing has been synced yet
+    public synchronized long getSyncedFrom() { return null == buffer ? 0 : buffer.getLong(SYNCED_FROM_OFFSET); }
+
+    // End of the range that has been synced completely in epoch seconds (inclusive), 0 if nothing has been synced yet
+    public synchronized long getSyncedUntil() { return null == buffer ? 0 : buffer.getLong(SYNCED_UNTIL_OFFSET); }
+
+    /**
+     * Remembers that all entries with from <= datelong <= until are stored, so a sync that was
+     * interrupted (app closed, chunks failed) can be continued on the next start.
+     * Must only be called after the entries of the range have been appended.
+     * @param fromEpochSeconds start of the range in epoch seconds
+     * @param untilEpochSeconds end of the range in epoch seconds (inclusive)
+     */
+    public synchronized void setSynced(final long fromEpochSeconds, final long untilEpochSeconds) {
+        if (null == buffer) { return; }
+        // From is written first, a crash in between leaves a range that is either inside the old one, inside the new one or empty
+        buffer.putLong(SYNCED_FROM_OFFSET, fromEpochSeconds);
+        buffer.putLong(SYNCED_UNTIL_OFFSET, untilEpochSeconds);
+        buffer.force();
+    }
+
+    // Returns the index of the first record with a datelong >= epochSeconds
+    public synchronized int indexOf(final long epochSeconds) {
+        int low  = 0;
+        int high = count;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (getDatelong(mid) < epochSeconds) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    public synchronized List<GlucoEntry> getEntriesSince(final long epochSeconds) {
+        return getEntries(epochSeconds, Long.MAX_VALUE);
+    }
+
+    public synchronized List<GlucoEntry> getEntries(final long fromEpochSeconds, final long toEpochSeconds) {
+        if (null == buffer) { return new ArrayList<>(); }
+        final int              fromIndex = indexOf(fromEpochSeconds);
+        final List<GlucoEntry> entries   = new ArrayList<>(Math.max(0, count - fromIndex));
+        for (int i = fromIndex ; i < count ; i++) {
+            final long datelong = getDatelong(i);
+            if (datelong > toEpochSeconds) { break; }
+            entries.add(getEntry(i));
+        }
+        return entries;
+    }
+
+    /**
+     * Hands the records with from <= datelong < to over to the consumer without creating entries
+     * @param fromEpochSeconds start of the range in epoch seconds
+     * @param toEpochSeconds end of the range in epoch seconds (exclusive)
+     * @param consumer called with datelong and sgv of every record in ascending order
+     */
+    public synchronized void forEach(final long fromEpochSeconds, final long toEpochSeconds, final ReadingConsumer consumer) {
+        if (null == buffer) { return; }
+        for (int i = indexOf(fromEpochSeconds) ; i < count ; i++) {
+            final int  offset   = getOffset(i);
+            final long datelong = buffer.getLong(offset);
+            if (datelong >= toEpochSeconds) { break; }
+            consumer.accept(datelong, buffer.getFloat(offset + 8));
+        }
+    }
+
+    /**
+     * Stores all entries that are not stored yet. Entries newer than the last stored one are appended,
+     * older ones (e.g. from a backfill) are merged into a copy of the records.
+     * The header is written last and acts as commit marker.
+     * @param entries entries in any order
+     * @return the number of entries that have been stored
+     */
+    public synchronized int append(final List<GlucoEntry> entries) {
+        if (null == buffer || null == entries || entries.isEmpty()) { return 0; }
+        final List<GlucoEntry> sortedEntries = new ArrayList<>(entries);
+        sortedEntries.sort(Comparator.comparingLong(GlucoEntry::datelong));
+
+        final long lastTimestamp = getLastTimestamp();
+        if (count > 0 && sortedEntries.get(0).datelong() < lastTimestamp) { return merge(sortedEntries); }
+
+        long last     = lastTimestamp;
+        int  appended = 0;
+        try {
+            for (GlucoEntry entry : sortedEntries) {
+                if (entry.datelong() <= last) { continue; }
+                ensureCapacity(first + count + appended + 1);
+                putEntry(count + appended, entry);
+                last = entry.datelong();
+                appended++;
+            }
+            if (appended > 0) {
+                count += appended;
+                buffer.putInt(COUNT_OFFSET, count);
+                buffer.force();
+            }
+        } catch (IOException e) {
+            System.out.println("Error appending to entry store. " + e);
+        }
+        return appended;
+    }
+
+    @Override public synchronized void close() {
+        buffer = null;
+        if (null == channel) { return; }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.out.println("Error closing entry store. " + e);
+        }
+        channel = null;
+    }
+
+
+    // ******************** Private Methods ***********************************
+    private void open() {
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            final long fileSize = channel.size();
+            buffer = channel.map(MapMode.READ_WRITE, 0, Math.max(fileSize, HEADER_SIZE + GROWTH));
+            if (fileSize < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                // New or incompatible file -> start with an empty store
+                buffer.putInt(0, MAGIC);
+                buffer.putInt(4, VERSION);
+                buffer.putLong(COUNT_OFFSET, 0);
+                buffer.putLong(SYNCED_FROM_OFFSET, 0);
+                buffer.putLong(SYNCED_UNTIL_OFFSET, 0);
+                buffer.force();
+                first = 0;
+                count = 0;
+            } else {
+                final int noOfSlots = (buffer.capacity() - HEADER_SIZE) / RECORD_SIZE;
+                first = Math.max(0, Math.min(buffer.getInt(FIRST_OFFSET), noOfSlots));
+                count = Math.max(0, Math.min(buffer.getInt(COUNT_OFFSET), noOfSlots - first));
+            }
+        } catch (IOException e) {
+            System.out.println("Error opening entry store " + path + ". " + e);
+            buffer = null;
+            first  = 0;
+            count  = 0;
+        }
+    }
+
+    private void ensureCapacity(final int noOfRecords) throws IOException {
+        final long requiredSize = HEADER_SIZE + (long) noOfRecords * RECORD_SIZE;
+        if (requiredSize <= buffer.capacity()) { return; }
+        buffer.force();
+        buffer = channel.map(MapMode.READ_WRITE, 0, requiredSize + GROWTH);
+    }
+
+    private int merge(final List<GlucoEntry> sortedEntries) {
+        // Keep the existing records, only add entries with a datelong that is not stored yet
+        final List<GlucoEntry> newEntries = new ArrayList<>();
+        long lastDatelong = Long.MIN_VALUE;
+        for (GlucoEntry entry : sortedEntries) {
+            if (entry.datelong() == lastDatelong) { continue; }
+            lastDatelong = entry.datelong();
+            final int index = indexOf(entry.datelong());
+            if (index < count && getDatelong(index) == entry.datelong()) { continue; }
+            newEntries.add(entry);
+        }
+        if (newEntries.isEmpty()) { return 0; }
+
+        // The merged records go in front of the current ones if they fit, otherwise behind them
+        final int mergedCount = count + newEntries.size();
+        final int mergedFirst = mergedCount <= first ? 0 : first + count;
+        try {
+            ensureCapacity(mergedFirst + mergedCount);
+            int o = 0;
+            int n = 0;
+            for (int i = 0 ; i < mergedCount ; i++) {
+                final int offset = HEADER_SIZE + (mergedFirst + i) * RECORD_SIZE;
+                if (n == newEntries.size() || (o < count && getDatelong(o) < newEntries.get(n).datelong())) {
+                    buffer.put(offset, buffer, getOffset(o++), RECORD_SIZE);
+                } else {
+                    putRecord(offset, newEntries.get(n++));
+                }
+            }
+            buffer.force();
+            // Count and first are switched with one write, a crash before leaves the old records in place
+            buffer.putLong(COUNT_OFFSET, ((long) mergedCount << 32) | mergedFirst);
+            buffer.force();
+            first = mergedFirst;
+            count = mergedCount;
+        } catch (IOException e) {
+            System.out.println("Error merging entries into entry store. " + e);
+            return 0;
+        }
+        return newEntries.size();
+    }
+
+    private void putEntry(final int index, final GlucoEntry entry) { putRecord(getOffset(index), entry); }
+
+    private void putRecord(final int offset, final GlucoEntry entry) {
+        buffer.putLong(offset, entry.datelong());
+        buffer.putFloat(offset + 8, (float) entry.sgv());
+        buffer.put(offset + 12, (byte) entry.trend().ordinal());
+        buffer.put(offset + 13, (byte) Trend.getFromText(null == entry.direction() ? "" : entry.direction()).ordinal());
+    }
+
+    private int getOffset(final int index) { return HEADER_SIZE + (first + index) * RECORD_SIZE; }
+
+    private long getDatelong(final int index) { return buffer.getLong(getOffset(index)); }
+
+    private GlucoEntry getEntry(final int index) {
+        final int            offset    = getOffset(index);
+        final long           datelong  = buffer.getLong(offset);
+        final double         sgv       = buffer.getFloat(offset + 8);
+        final Trend          trend     = Trend.values()[buffer.get(offset + 12)];
+        final Trend          direction = Trend.values()[buffer.get(offset + 13)];
+        final OffsetDateTime date      = OffsetDateTime.ofInstant(Instant.ofEpochSecond(datelong), ZoneId.systemDefault());
+        return new GlucoEntry("", sgv, datelong, date, "", trend, direction.getTextKey(), "", "sgv", 0, 0, 0, 0, 0, 0, "");
+    }
+
+
+    // ******************** Inner Classes *************************************
+    @FunctionalInterface
+    public interface ReadingConsumer {
+        void accept(long datelong, double sgv);
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.http.HttpResponse;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+
+/**
+ * Fetches all entries that are newer than the last known timestamp (find[date][$gt]=...)
+ * and hands them over as one batch, so no readings get lost if more than one arrived
+ * since the last call.
+ * The range that has been synced completely is kept in the store, so a sync that was
+ * interrupted continues where it stopped on the next start.
+ */
+public class EntrySync {
+    private final EntryStore   entryStore;
+    private final String       nightscoutUrl;
+    private final String       apiSecret;
+    private final String       token;
+    private final Interval     interval;
+    private final AtomicLong   bytesReceived;
+    private final AtomicLong   noOfRequests;
+    private final List<long[]> syncedRanges;  // from and until (inclusive) of the ranges that are completely in the store, sorted by from
+    private       long         lastTimestamp;
+
+
+    // ******************** Constructors **************************************
+    public EntrySync(final EntryStore entryStore, final String nightscoutUrl, final String apiSecret, final String token, final Interval interval) {
+        this.entryStore    = entryStore;
+        this.nightscoutUrl = nightscoutUrl;
+        this.apiSecret     = apiSecret;
+        this.token         = token;
+        this.interval      = interval;
+        this.bytesReceived = new AtomicLong(0);
+        this.noOfRequests  = new AtomicLong(0);
+        this.syncedRanges  = new ArrayList<>();
+        // Entries behind the synced range may be stored already, but there can be a gap in front of them, so they are fetched again
+        this.lastTimestamp = null == entryStore ? 0 : entryStore.getSyncedUntil();
+        if (lastTimestamp > 0) { syncedRanges.add(new long[] { entryStore.getSyncedFrom(), lastTimestamp }); }
+    }
+
+
+    // ******************** Methods *******************************************
+    public synchronized long getLastTimestamp() { return lastTimestamp; }
+
+    public long getBytesReceived() { return bytesReceived.get(); }
+
+    public long getNoOfRequests() { return noOfRequests.get(); }
+
+    /**
+     * Blocking call, returns the new entries sorted by date in descending order (newest first)
+     * @return the entries that are newer than the last synced entry
+     */
+    public List<GlucoEntry> sync() {
+        final long since = getSince();
+        if (needsBackfill(since)) { return backfill(since).join(); }
+        noOfRequests.incrementAndGet();
+        return mergeSince(since, decode(Helper.getInputStream(createUrl(since), apiSecret)));
+    }
+
+    public CompletableFuture<List<GlucoEntry>> syncAsync() {
+        final long since = getSince();
+        if (needsBackfill(since)) { return backfill(since); }
+        noOfRequests.incrementAndGet();
+        return Helper.getInputStreamAsync(createUrl(since), apiSecret).thenApply(response -> mergeSince(since, decode(response)));
+    }
+
+    /**
+     * Fetches the given first interval and hands it over before the older history is fetched
+     * in growing tiers (7 days, 30 days, whole interval). Every tier is handed over to the
+     * consumer as soon as it is available, so the ui can show the recent values first.
+     * If only a small gap has to be synced this behaves like syncAsync().
+     * History that is missing in front of the synced range (e.g. because the app was closed
+     * during the backfill) is fetched last.
+     * @param firstInterval the interval that should be fetched first (e.g. the visible interval)
+     * @param consumer called with the entries of each tier, the first call contains the newest entries
+     * @return completes after the last tier has been handed over
+     */
+    public CompletableFuture<Void> syncAsync(final Interval firstInterval, final Consumer<List<GlucoEntry>> consumer) {
+        final long since        = getSince();
+        final long now          = Instant.now().getEpochSecond();
+        final long historyStart = now - interval.getSeconds() + 1;
+        if (!needsBackfill(since)) { return syncAsync().thenAccept(consumer).thenCompose(v -> fillHistory(historyStart)).thenAccept(consumer); }
+
+        final long firstStart = Math.max(since, now - Math.min(firstInterval.getSeconds(), interval.getSeconds()));
+        CompletableFuture<Void> future = fetch(firstStart + 1, now + Constants.SECONDS_PER_MINUTE, false).thenAccept(consumer);
+        final Interval[] tiers   = { Interval.LAST_168_HOURS, Interval.LAST_720_HOURS, interval };
+        long             tierEnd = firstStart + 1;
+        for (Interval tier : tiers) {
+            final long tierStart = Math.max(since, now - Math.min(tier.getSeconds(), interval.getSeconds())) + 1;
+            if (tierStart >= tierEnd) { continue; }
+            final long from = tierStart;
+            final long to   = tierEnd;
+            future  = future.thenCompose(v -> fetch(from, to, true)).thenAccept(consumer);
+            tierEnd = tierStart;
+        }
+        return future.thenCompose(v -> fillHistory(historyStart)).thenAccept(consumer);
+    }
+
+    /**
+     * Fetches the history that is missing in front of the synced range, e.g. when a range that
+     * is longer than the interval should be shown. The entries are only stored.
+     * @param seconds length of the history that should be in the store
+     * @return the fetched entries, completes right away if the history is already in the store
+     */
+    public CompletableFuture<List<GlucoEntry>> syncHistory(final long seconds) {
+        return fillHistory(Instant.now().getEpochSecond() - seconds + 1);
+    }
+
+
+    // ******************** Private Methods ***********************************
+    private synchronized long getSince() {
+        // Never ask for more than the given interval, even if the last sync is older
+        return Math.max(lastTimestamp, Instant.now().getEpochSecond() - interval.getSeconds());
+    }
+
+    // Larger gaps (first start, app was not running for a while) are fetched in parallel chunks
+    private boolean needsBackfill(final long since) {
+        return Instant.now().getEpochSecond() - since > Backfill.DEFAULT_CHUNK_SECONDS;
+    }
+
+    private CompletableFuture<List<GlucoEntry>> backfill(final long since) {
+        return fetch(since + 1, Instant.now().getEpochSecond() + Constants.SECONDS_PER_MINUTE, false);
+    }
+
+    // Fetches the gap between the given time (or the synced range before it) and the start of the newest synced range
+    private synchronized CompletableFuture<List<GlucoEntry>> fillHistory(final long fromEpochSeconds) {
+        final int  noOfRanges = syncedRanges.size();
+        final long from       = noOfRanges > 1 ? Math.max(fromEpochSeconds, syncedRanges.get(noOfRanges - 2)[1] + 1) : fromEpochSeconds;
+        final long to         = 0 == noOfRanges ? from : syncedRanges.get(noOfRanges - 1)[0];
+        if (to <= from) { return CompletableFuture.completedFuture(new ArrayList<>()); }
+        return fetch(from, to, true);
+    }
+
+    private CompletableFuture<List<GlucoEntry>> fetch(final long from, final long to, final boolean history) {
+        final Backfill backfill = new Backfill(nightscoutUrl, apiSecret, token);
+        return backfill.fetch(from, to).whenComplete((entries, throwable) -> {
+            bytesReceived.addAndGet(backfill.getBytesReceived());
+            noOfRequests.addAndGet(backfill.getNoOfRequests());
+        }).thenApply(entries -> {
+            final List<GlucoEntry> mergedEntries = history ? mergeHistory(entries) : merge(entries);
+            // New entries can still be uploaded with a delay, so the newest range is only complete up to the last received entry
+            final long until = history ? to - 1 : getLastDatelong(entries, from - 1);
+            if (backfill.getNoOfFailedChunks() > 0) {
+                // Chunks that could not be fetched are fetched again by the next sync
+                rewind(backfill.getFailedFrom());
+                markSynced(from, backfill.getFailedFrom() - 1);
+                markSynced(backfill.getFailedTo(), until);
+            } else {
+                markSynced(from, until);
+            }
+            return mergedEntries;
+        });
+    }
+
+    private List<GlucoEntry> mergeSince(final long since, final List<GlucoEntry> entries) {
+        final List<GlucoEntry> newEntries = merge(entries);
+        markSynced(since + 1, getLastDatelong(entries, since));
+        return newEntries;
+    }
+
+    /**
+     * Adds the given range to the synced ranges and stores the newest of them. Older ranges are
+     * only kept in memory, a gap in front of the stored range is fetched by fillHistory() on the next start.
+     */
+    private synchronized void markSynced(final long from, final long until) {
+        if (until < from) { return; }
+        long mergedFrom  = from;
+        long mergedUntil = until;
+        for (Iterator<long[]> iterator = syncedRanges.iterator() ; iterator.hasNext() ; ) {
+            final long[] range = iterator.next();
+            if (range[0] > mergedUntil + 1 || range[1] + 1 < mergedFrom) { continue; }
+            mergedFrom  = Math.min(mergedFrom, range[0]);
+            mergedUntil = Math.max(mergedUntil, range[1]);
+            iterator.remove();
+        }
+        syncedRanges.add(new long[] { mergedFrom, mergedUntil });
+        syncedRanges.sort(Comparator.comparingLong(range -> range[0]));
+        final long[] newestRange = syncedRanges.get(syncedRanges.size() - 1);
+        if (null != entryStore) { entryStore.setSynced(newestRange[0], newestRange[1]); }
+    }
+
+    private static long getLastDatelong(final List<GlucoEntry> entries, final long defaultValue) {
+        long lastDatelong = defaultValue;
+        for (GlucoEntry entry : entries) { lastDatelong = Math.max(lastDatelong, entry.datelong()); }
+        return lastDatelong;
+    }
+
+    // Moves the last timestamp in front of the given time, entries that are fetched twice are dropped by the store and the series
+    private synchronized void rewind(final long epochSeconds) {
+        lastTimestamp = Math.min(lastTimestamp, epochSeconds - 1);
+    }
+
+    private String createUrl(final long since) {
+        final StringBuilder urlBuilder = new StringBuilder().append(nightscoutUrl).append("?find[date][$gt]=").append(since * 1000).append("&count=").append(interval.getNoOfEntries());
+        if (null != token && !token.isEmpty()) { urlBuilder.append("&token=").append(token); }
+        return urlBuilder.toString();
+    }
+
+    private List<GlucoEntry> decode(final HttpResponse<InputStream> response) {
+        if (null == response || null == response.body()) { return new ArrayList<>(); }
+        if (response.statusCode() != 200) {
+            try { response.body().close(); } catch (IOException e) { }
+            return new ArrayList<>();
+        }
+        // An incomplete response is dropped as a whole, so the last timestamp stays where it is and the next sync fetches it again
+        final CountingInputStream inputStream = new CountingInputStream(response.body());
+        try {
+            return GlucoEntryDecoder.decode(inputStream);
+        } catch (UncheckedIOException e) {
+            System.out.println(e.getMessage() + ". " + e.getCause());
+            return new ArrayList<>();
+        } finally {
+            bytesReceived.addAndGet(inputStream.getCount());
+        }
+    }
+
+    private synchronized List<GlucoEntry> merge(final List<GlucoEntry> entries) {
+        // Drop everything that was already delivered by a concurrent sync
+        final long             last       = lastTimestamp;
+        final List<GlucoEntry> newEntries = new ArrayList<>();
+        for (GlucoEntry entry : entries) {
+            if (entry.datelong() > last) { newEntries.add(entry); }
+        }
+        if (newEntries.isEmpty()) { return newEntries; }
+
+        newEntries.sort(Comparator.comparingLong(GlucoEntry::datelong).reversed());
+        // Several uploaders can deliver the same reading
+        for (int i = newEntries.size() - 1 ; i > 0 ; i--) {
+            if (newEntries.get(i).datelong() == newEntries.get(i - 1).datelong()) { newEntries.remove(i); }
+        }
+        lastTimestamp = newEntries.get(0).datelong();
+        if (null != entryStore) { entryStore.append(newEntries); }
+        return newEntries;
+    }
+
+    // Older history is behind the last timestamp, it only gets deduplicated and stored
+    private List<GlucoEntry> mergeHistory(final List<GlucoEntry> entries) {
+        final List<GlucoEntry> historyEntries = new ArrayList<>(entries);
+        historyEntries.sort(Comparator.comparingLong(GlucoEntry::datelong).reversed());
+        for (int i = historyEntries.size() - 1 ; i > 0 ; i--) {
+            if (historyEntries.get(i).datelong() == historyEntries.get(i - 1).datelong()) { historyEntries.remove(i); }
+        }
+        if (null != entryStore && !historyEntries.isEmpty()) { entryStore.append(historyEntries); }
+        return historyEntries;
+    }
+}
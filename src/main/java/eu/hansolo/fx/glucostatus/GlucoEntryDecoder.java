@@ -0,0 +1,166 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import static eu.hansolo.fx.glucostatus.Constants.FIELD_DATE;
+import static eu.hansolo.fx.glucostatus.Constants.FIELD_DATE_STRING;
+import static eu.hansolo.fx.glucostatus.Constants.FIELD_DELTA;
+import static eu.hansolo.fx.glucostatus.Constants.FIELD_DEVICE;
+import static eu.hansolo.fx.glucostatus.Constants.FIELD_DIRECTION;
+import static eu.hansolo.fx.glucostatus.Constants.FIELD_FILTERED;
+import static eu.hansolo.fx.glucostatus.Constants.FIELD_ID;
+import static eu.hansolo.fx.glucostatus.Constants.FIELD_NOISE;
+import static eu.hansolo.fx.glucostatus.Constants.FIELD_RSSI;
+import static eu.hansolo.fx.glucostatus.Constants.FIELD_SGV;
+import static eu.hansolo.fx.glucostatus.Constants.FIELD_SYS_TIME;
+import static eu.hansolo.fx.glucostatus.Constants.FIELD_TREND;
+import static eu.hansolo.fx.glucostatus.Constants.FIELD_TYPE;
+import static eu.hansolo.fx.glucostatus.Constants.FIELD_UNFILTERED;
+import static eu.hansolo.fx.glucostatus.Constants.FIELD_UTC_OFFSET;
+
+
+/**
+ * Decodes the Nightscout entries json while it is read from the stream,
+ * without creating the whole response as String or JsonArray first.
+ */
+public class GlucoEntryDecoder {
+    private static final int BUFFER_SIZE = 16_384;
+
+
+    // ******************** Constructors **************************************
+    private GlucoEntryDecoder() {}
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Decodes all entries of the given json array
+     * @param inputStream utf-8 encoded json
+     * @return the decoded entries in the order of the json array
+     * @throws UncheckedIOException if the json could not be read completely (e.g. truncated or malformed),
+     *                              a partially decoded response is never returned
+     */
+    public static final List<GlucoEntry> decode(final InputStream inputStream) {
+        if (null == inputStream) { return new ArrayList<>(); }
+        return decode(new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8), BUFFER_SIZE));
+    }
+    public static final List<GlucoEntry> decode(final Reader reader) {
+        final List<GlucoEntry> entries = new ArrayList<>();
+        try (JsonReader jsonReader = new JsonReader(reader)) {
+            if (JsonToken.BEGIN_ARRAY != jsonReader.peek()) { return entries; }
+            jsonReader.beginArray();
+            while (jsonReader.hasNext()) {
+                if (JsonToken.BEGIN_OBJECT == jsonReader.peek()) {
+                    entries.add(readEntry(jsonReader));
+                } else {
+                    jsonReader.skipValue();
+                }
+            }
+            jsonReader.endArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error decoding entries", e);
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new UncheckedIOException("Error decoding entries", new IOException(e));
+        }
+        return entries;
+    }
+
+
+    // ******************** Private Methods ***********************************
+    private static GlucoEntry readEntry(final JsonReader jsonReader) throws IOException {
+        String id         = "";
+        double sgv        = 0;
+        long   datelong   = 0;
+        String dateString = "";
+        Trend  trend      = Trend.NONE;
+        String direction  = "";
+        String device     = "";
+        String type       = "";
+        int    utcOffset  = 0;
+        int    noise      = 0;
+        double filtered   = 0;
+        double unfiltered = 0;
+        int    rssi       = 0;
+        double delta      = 0;
+        String sysTime    = "";
+
+        jsonReader.beginObject();
+        while (jsonReader.hasNext()) {
+            switch (jsonReader.nextName()) {
+                case FIELD_ID          -> id         = readString(jsonReader, id);
+                case FIELD_SGV         -> sgv        = readDouble(jsonReader, sgv);
+                case FIELD_DATE        -> datelong   = (long) readDouble(jsonReader, 0) / 1000;
+                case FIELD_DATE_STRING -> dateString = readString(jsonReader, dateString);
+                case FIELD_TREND       -> trend      = Trend.getFromText(readString(jsonReader, ""));
+                case FIELD_DIRECTION   -> direction  = readString(jsonReader, direction);
+                case FIELD_DEVICE      -> device     = readString(jsonReader, device);
+                case FIELD_TYPE        -> type       = readString(jsonReader, type);
+                case FIELD_UTC_OFFSET  -> utcOffset  = (int) readDouble(jsonReader, utcOffset);
+                case FIELD_NOISE       -> noise      = (int) readDouble(jsonReader, noise);
+                case FIELD_FILTERED    -> filtered   = readDouble(jsonReader, filtered);
+                case FIELD_UNFILTERED  -> unfiltered = readDouble(jsonReader, unfiltered);
+                case FIELD_RSSI        -> rssi       = (int) readDouble(jsonReader, rssi);
+                case FIELD_DELTA       -> delta      = readDouble(jsonReader, delta);
+                case FIELD_SYS_TIME    -> sysTime    = readString(jsonReader, sysTime);
+                default                -> jsonReader.skipValue();
+            }
+        }
+        jsonReader.endObject();
+
+        final OffsetDateTime date = OffsetDateTime.ofInstant(Instant.ofEpochSecond(datelong), ZoneId.systemDefault());
+        return new GlucoEntry(id, sgv, datelong, date, dateString, trend, direction, device, type, utcOffset, noise, filtered, unfiltered, rssi, delta, sysTime);
+    }
+
+    private static String readString(final JsonReader jsonReader, final String defaultValue) throws IOException {
+        return switch (jsonReader.peek()) {
+            case STRING, NUMBER -> jsonReader.nextString();
+            default             -> { jsonReader.skipValue(); yield defaultValue; }
+        };
+    }
+
+    private static double readDouble(final JsonReader jsonReader, final double defaultValue) throws IOException {
+        return switch (jsonReader.peek()) {
+            case NUMBER -> jsonReader.nextDouble();
+            case STRING -> {
+                final String text = jsonReader.nextString();
+                try {
+                    yield Double.parseDouble(text);
+                } catch (NumberFormatException e) {
+                    yield defaultValue;
+                }
+            }
+            default     -> { jsonReader.skipValue(); yield defaultValue; }
+        };
+    }
+}
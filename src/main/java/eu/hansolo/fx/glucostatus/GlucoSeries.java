@@ -0,0 +1,516 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import eu.hansolo.fx.glucostatus.DayIndex.DaySummary;
+import javafx.event.EventHandler;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * Columnar store for the glucose entries, sorted by datelong in ascending order.
+ * Timestamps, values and trends are kept in primitive arrays, direction and device
+ * are dictionary encoded. Views are immutable snapshots that share the arrays:
+ * new entries are only written behind the current end and everything else
+ * (inserting older entries, removing entries in between) creates new arrays.
+ * Every mutation is applied as one batch and fires exactly one GlucoSeriesEvent.
+ * A DayIndex with one summary per day is updated with every batch, only the days
+ * that have been touched by the batch are summarized again.
+ */
+public class GlucoSeries {
+    private static final int                                  INITIAL_CAPACITY = Interval.LAST_2160_HOURS.getNoOfEntries() + Interval.LAST_24_HOURS.getNoOfEntries();
+    private final        List<EventHandler<GlucoSeriesEvent>> handlers;
+    private final        List<String>                         directions;
+    private final        Map<String, Integer>                 directionIndex;
+    private final        List<String>                         devices;
+    private final        Map<String, Integer>                 deviceIndex;
+    private final        NavigableMap<Long, DaySummary>       days;
+    private              long[]                               datelongs;
+    private              float[]                              sgvs;
+    private              byte[]                               trends;
+    private              byte[]                               directionKeys;
+    private              short[]                              deviceKeys;
+    private              int                                  head;
+    private              int                                  tail;
+    private              ThresholdProfile                     dayProfile;
+    private              DayIndex                             dayIndex;
+
+
+    // ******************** Constructors **************************************
+    public GlucoSeries() {
+        this.handlers       = new CopyOnWriteArrayList<>();
+        this.directions     = new CopyOnWriteArrayList<>();
+        this.directionIndex = new HashMap<>();
+        this.devices        = new CopyOnWriteArrayList<>();
+        this.deviceIndex    = new HashMap<>();
+        this.days           = new TreeMap<>();
+        this.datelongs      = new long[INITIAL_CAPACITY];
+        this.sgvs           = new float[INITIAL_CAPACITY];
+        this.trends         = new byte[INITIAL_CAPACITY];
+        this.directionKeys  = new byte[INITIAL_CAPACITY];
+        this.deviceKeys     = new short[INITIAL_CAPACITY];
+        this.head           = 0;
+        this.tail           = 0;
+        this.dayIndex       = DayIndex.EMPTY;
+    }
+
+
+    // ******************** Methods *******************************************
+    public synchronized int size() { return tail - head; }
+
+    public synchronized boolean isEmpty() { return tail == head; }
+
+    public synchronized long getFirstTimestamp() { return tail == head ? 0 : datelongs[head]; }
+
+    public synchronized long getLastTimestamp() { return tail == head ? 0 : datelongs[tail - 1]; }
+
+    public synchronized View getView() { return new View(this, head, tail); }
+
+    // Entries with from <= datelong < to
+    public synchronized View getView(final long fromEpochSeconds, final long toEpochSeconds) {
+        final int from = lowerBound(datelongs, head, tail, fromEpochSeconds);
+        final int to   = lowerBound(datelongs, from, tail, toEpochSeconds);
+        return new View(this, from, to);
+    }
+
+    // Entries with datelong >= epochSeconds
+    public synchronized View getViewSince(final long epochSeconds) {
+        return new View(this, lowerBound(datelongs, head, tail, epochSeconds), tail);
+    }
+
+    /**
+     * Returns the per day summaries of all entries in the series. If the ThresholdProfile
+     * has changed since the last update, the index will be rebuilt for the new profile.
+     * @return an immutable snapshot of the index
+     */
+    public synchronized DayIndex getDayIndex() {
+        final ThresholdProfile profile = ThresholdProfile.getCurrent();
+        if (profile != dayProfile) { rebuildDays(profile); }
+        if (null == dayIndex) { dayIndex = new DayIndex(new TreeMap<>(days), dayProfile); }
+        return dayIndex;
+    }
+
+    /**
+     * Adds all entries that are not already part of the series (same datelong)
+     * @param entries entries in any order
+     * @return the number of entries that have been added
+     */
+    public int addAll(final Collection<GlucoEntry> entries) { return apply(entries, null, Long.MIN_VALUE)[0]; }
+
+    // Removes all entries with a datelong < epochSeconds
+    public int removeBefore(final long epochSeconds) { return apply(null, null, epochSeconds)[1]; }
+
+    public void clear() { apply(null, null, Long.MAX_VALUE); }
+
+    /**
+     * Removes and inserts entries in one step and fires one event for the whole batch.
+     * Entries are matched by their datelong.
+     * @param inserted entries to add (in any order), entries that already exist are ignored
+     * @param removed entries to remove
+     */
+    public void applyBatch(final Collection<GlucoEntry> inserted, final Collection<GlucoEntry> removed) { apply(inserted, removed, Long.MIN_VALUE); }
+    /**
+     * Removes all entries older than removeBefore and inserts the given entries in one step,
+     * fires one event for the whole batch.
+     * @param inserted entries to add (in any order), entries that already exist are ignored
+     * @param removeBefore all entries with a datelong < removeBefore will be removed
+     */
+    public void applyBatch(final Collection<GlucoEntry> inserted, final long removeBefore) { apply(inserted, null, removeBefore); }
+
+    public void addEventHandler(final EventHandler<GlucoSeriesEvent> handler) { handlers.add(handler); }
+
+    public void removeEventHandler(final EventHandler<GlucoSeriesEvent> handler) { handlers.remove(handler); }
+
+
+    // ******************** Private Methods ***********************************
+    private int[] apply(final Collection<GlucoEntry> inserted, final Collection<GlucoEntry> removed, final long removeBefore) {
+        final int  noOfRemoved;
+        final int  noOfInserted;
+        final View view;
+        synchronized (this) {
+            final Set<Long> touchedDays = new HashSet<>();
+            final int       newHead     = lowerBound(datelongs, head, tail, removeBefore);
+            int removedCount = newHead - head;
+            for (int i = head ; i < newHead ; ) {
+                final long epochDay = DayIndex.toEpochDay(datelongs[i]);
+                touchedDays.add(epochDay);
+                i = lowerBound(datelongs, i, newHead, DayIndex.getStartOfDay(epochDay + 1));
+            }
+            head = newHead;
+            removedCount += remove(removed, touchedDays);
+            noOfRemoved  = removedCount;
+            noOfInserted = insert(inserted, touchedDays);
+            if (noOfInserted > 0 || noOfRemoved > 0) { updateDays(touchedDays); }
+            view         = new View(this, head, tail);
+        }
+        if (noOfInserted > 0 || noOfRemoved > 0) {
+            final GlucoSeriesEvent event = new GlucoSeriesEvent(view, noOfInserted, noOfRemoved, this, null, GlucoSeriesEvent.SERIES_CHANGED);
+            for (EventHandler<GlucoSeriesEvent> handler : handlers) { handler.handle(event); }
+        }
+        return new int[] { noOfInserted, noOfRemoved };
+    }
+
+    private int remove(final Collection<GlucoEntry> entries, final Set<Long> touchedDays) {
+        if (null == entries || entries.isEmpty() || tail == head) { return 0; }
+        final boolean[] marked = new boolean[tail - head];
+        int             count  = 0;
+        if (entries instanceof View view) {
+            for (int i = 0 ; i < view.size() ; i++) { count += mark(marked, view.getDatelong(i)); }
+        } else {
+            for (GlucoEntry entry : entries) { count += mark(marked, entry.datelong()); }
+        }
+        if (0 == count) { return 0; }
+
+        long dayEnd = Long.MIN_VALUE;
+        for (int i = 0 ; i < marked.length ; i++) {
+            if (!marked[i] || datelongs[head + i] < dayEnd) { continue; }
+            final long epochDay = DayIndex.toEpochDay(datelongs[head + i]);
+            touchedDays.add(epochDay);
+            dayEnd = DayIndex.getStartOfDay(epochDay + 1);
+        }
+
+        boolean isPrefix = true;
+        for (int i = 0 ; i < count ; i++) {
+            if (!marked[i]) { isPrefix = false; break; }
+        }
+        if (isPrefix) {
+            // Removing the oldest entries only moves the head
+            head += count;
+        } else {
+            // Copy the remaining entries into new arrays so that existing views stay untouched
+            final long[]  oldDatelongs     = datelongs;
+            final float[] oldSgvs          = sgvs;
+            final byte[]  oldTrends        = trends;
+            final byte[]  oldDirectionKeys = directionKeys;
+            final short[] oldDeviceKeys    = deviceKeys;
+            final int     oldHead          = head;
+            final int     capacity         = Math.max(INITIAL_CAPACITY, (marked.length - count) * 3 / 2);
+            datelongs     = new long[capacity];
+            sgvs          = new float[capacity];
+            trends        = new byte[capacity];
+            directionKeys = new byte[capacity];
+            deviceKeys    = new short[capacity];
+            head          = 0;
+            tail          = 0;
+            for (int i = 0 ; i < marked.length ; i++) {
+                if (marked[i]) { continue; }
+                final int o = oldHead + i;
+                datelongs[tail]     = oldDatelongs[o];
+                sgvs[tail]          = oldSgvs[o];
+                trends[tail]        = oldTrends[o];
+                directionKeys[tail] = oldDirectionKeys[o];
+                deviceKeys[tail]    = oldDeviceKeys[o];
+                tail++;
+            }
+        }
+        return count;
+    }
+
+    private int mark(final boolean[] marked, final long datelong) {
+        final int index = lowerBound(datelongs, head, tail, datelong);
+        if (index < tail && datelongs[index] == datelong && !marked[index - head]) {
+            marked[index - head] = true;
+            return 1;
+        }
+        return 0;
+    }
+
+    private int insert(final Collection<GlucoEntry> entries, final Set<Long> touchedDays) {
+        if (null == entries || entries.isEmpty()) { return 0; }
+        final List<GlucoEntry> sortedEntries = new ArrayList<>(entries);
+        sortedEntries.sort(Comparator.comparingLong(GlucoEntry::datelong));
+
+        // Remove duplicates within the new entries and with existing entries
+        final List<GlucoEntry> newEntries = new ArrayList<>(sortedEntries.size());
+        long lastDatelong = Long.MIN_VALUE;
+        for (GlucoEntry entry : sortedEntries) {
+            if (entry.datelong() == lastDatelong) { continue; }
+            lastDatelong = entry.datelong();
+            if (contains(entry.datelong())) { continue; }
+            newEntries.add(entry);
+        }
+        if (newEntries.isEmpty()) { return 0; }
+
+        long dayEnd = Long.MIN_VALUE;
+        for (GlucoEntry entry : newEntries) {
+            if (entry.datelong() < dayEnd) { continue; }
+            final long epochDay = DayIndex.toEpochDay(entry.datelong());
+            touchedDays.add(epochDay);
+            dayEnd = DayIndex.getStartOfDay(epochDay + 1);
+        }
+
+        final int noOfNewEntries = newEntries.size();
+        if (tail == head || newEntries.get(0).datelong() > datelongs[tail - 1]) {
+            // Append behind the current end, slots behind tail are not visible to any view
+            if (tail + noOfNewEntries > datelongs.length) { reallocate(Math.max(INITIAL_CAPACITY, (tail - head + noOfNewEntries) * 3 / 2)); }
+            for (GlucoEntry entry : newEntries) { set(tail++, entry); }
+        } else {
+            // Merge into new arrays so that existing views stay untouched
+            final long[]  oldDatelongs     = datelongs;
+            final float[] oldSgvs          = sgvs;
+            final byte[]  oldTrends        = trends;
+            final byte[]  oldDirectionKeys = directionKeys;
+            final short[] oldDeviceKeys    = deviceKeys;
+            final int     oldHead          = head;
+            final int     oldTail          = tail;
+            final int     capacity         = Math.max(INITIAL_CAPACITY, (oldTail - oldHead + noOfNewEntries) * 3 / 2);
+            datelongs     = new long[capacity];
+            sgvs          = new float[capacity];
+            trends        = new byte[capacity];
+            directionKeys = new byte[capacity];
+            deviceKeys    = new short[capacity];
+            head          = 0;
+            tail          = 0;
+            int o = oldHead;
+            int n = 0;
+            while (o < oldTail || n < noOfNewEntries) {
+                if (n == noOfNewEntries || (o < oldTail && oldDatelongs[o] < newEntries.get(n).datelong())) {
+                    datelongs[tail]     = oldDatelongs[o];
+                    sgvs[tail]          = oldSgvs[o];
+                    trends[tail]        = oldTrends[o];
+                    directionKeys[tail] = oldDirectionKeys[o];
+                    deviceKeys[tail]    = oldDeviceKeys[o];
+                    tail++;
+                    o++;
+                } else {
+                    set(tail++, newEntries.get(n++));
+                }
+            }
+        }
+        return noOfNewEntries;
+    }
+
+    private void updateDays(final Set<Long> touchedDays) {
+        final ThresholdProfile profile = ThresholdProfile.getCurrent();
+        if (profile != dayProfile) {
+            rebuildDays(profile);
+            return;
+        }
+        for (long epochDay : touchedDays) {
+            final int from = lowerBound(datelongs, head, tail, DayIndex.getStartOfDay(epochDay));
+            final int to   = lowerBound(datelongs, from, tail, DayIndex.getStartOfDay(epochDay + 1));
+            if (from == to) {
+                days.remove(epochDay);
+            } else {
+                days.put(epochDay, DayIndex.summarize(epochDay, new View(this, from, to), profile));
+            }
+        }
+        dayIndex = null;
+    }
+
+    private void rebuildDays(final ThresholdProfile profile) {
+        days.clear();
+        int from = head;
+        while (from < tail) {
+            final long epochDay = DayIndex.toEpochDay(datelongs[from]);
+            final int  to       = lowerBound(datelongs, from, tail, DayIndex.getStartOfDay(epochDay + 1));
+            days.put(epochDay, DayIndex.summarize(epochDay, new View(this, from, to), profile));
+            from = to;
+        }
+        dayProfile = profile;
+        dayIndex   = null;
+    }
+
+    private boolean contains(final long datelong) {
+        final int index = lowerBound(datelongs, head, tail, datelong);
+        return index < tail && datelongs[index] == datelong;
+    }
+
+    private void set(final int index, final GlucoEntry entry) {
+        datelongs[index]     = entry.datelong();
+        sgvs[index]          = (float) entry.sgv();
+        trends[index]        = (byte) entry.trend().ordinal();
+        directionKeys[index] = (byte) getKey(directions, directionIndex, null == entry.direction() ? "" : entry.direction(), Byte.MAX_VALUE);
+        deviceKeys[index]    = (short) getKey(devices, deviceIndex, null == entry.device() ? "" : entry.device(), Short.MAX_VALUE);
+    }
+
+    private void reallocate(final int capacity) {
+        final int size = tail - head;
+        final long[]  newDatelongs     = new long[capacity];
+        final float[] newSgvs          = new float[capacity];
+        final byte[]  newTrends        = new byte[capacity];
+        final byte[]  newDirectionKeys = new byte[capacity];
+        final short[] newDeviceKeys    = new short[capacity];
+        System.arraycopy(datelongs, head, newDatelongs, 0, size);
+        System.arraycopy(sgvs, head, newSgvs, 0, size);
+        System.arraycopy(trends, head, newTrends, 0, size);
+        System.arraycopy(directionKeys, head, newDirectionKeys, 0, size);
+        System.arraycopy(deviceKeys, head, newDeviceKeys, 0, size);
+        datelongs     = newDatelongs;
+        sgvs          = newSgvs;
+        trends        = newTrends;
+        directionKeys = newDirectionKeys;
+        deviceKeys    = newDeviceKeys;
+        head          = 0;
+        tail          = size;
+    }
+
+    // The dictionaries only grow, so keys that have been handed out stay valid for all views
+    private static int getKey(final List<String> dictionary, final Map<String, Integer> index, final String text, final int maxKey) {
+        Integer key = index.get(text);
+        if (null == key) {
+            if (dictionary.size() > maxKey) { return 0; }
+            key = dictionary.size();
+            dictionary.add(text);
+            index.put(text, key);
+        }
+        return key;
+    }
+
+    // Returns the first index in [from, to) with a datelong >= epochSeconds
+    private static int lowerBound(final long[] datelongs, final int from, final int to, final long epochSeconds) {
+        int low  = from;
+        int high = to;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (datelongs[mid] < epochSeconds) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+
+    // ******************** Inner Classes *************************************
+    /**
+     * Immutable, zero copy view on a range of the series in ascending order.
+     * The primitive getters read the columns directly, get(index) creates a GlucoEntry on the fly.
+     */
+    public static final class View extends AbstractList<GlucoEntry> implements RandomAccess {
+        public  static final View         EMPTY = new View(new long[0], new float[0], new byte[0], new byte[0], new short[0], List.of(), List.of(), 0, 0);
+        private        final long[]       datelongs;
+        private        final float[]      sgvs;
+        private        final byte[]       trends;
+        private        final byte[]       directionKeys;
+        private        final short[]      deviceKeys;
+        private        final List<String> directions;
+        private        final List<String> devices;
+        private        final int          from;
+        private        final int          to;
+
+
+        // ******************** Constructors **********************************
+        private View(final GlucoSeries series, final int from, final int to) {
+            this(series.datelongs, series.sgvs, series.trends, series.directionKeys, series.deviceKeys, series.directions, series.devices, from, to);
+        }
+        private View(final long[] datelongs, final float[] sgvs, final byte[] trends, final byte[] directionKeys, final short[] deviceKeys, final List<String> directions, final List<String> devices, final int from, final int to) {
+            this.datelongs     = datelongs;
+            this.sgvs          = sgvs;
+            this.trends        = trends;
+            this.directionKeys = directionKeys;
+            this.deviceKeys    = deviceKeys;
+            this.directions    = directions;
+            this.devices       = devices;
+            this.from          = from;
+            this.to            = Math.max(from, to);
+        }
+
+
+        // ******************** Methods ***************************************
+        @Override public int size() { return to - from; }
+
+        @Override public GlucoEntry get(final int index) {
+            final int            i        = checkIndex(index);
+            final long           datelong = datelongs[i];
+            final OffsetDateTime date     = OffsetDateTime.ofInstant(Instant.ofEpochSecond(datelong), ZoneId.systemDefault());
+            return new GlucoEntry("", sgvs[i], datelong, date, "", Trend.values()[trends[i]], directions.get(directionKeys[i]), devices.get(deviceKeys[i]), "sgv", 0, 0, 0, 0, 0, 0, "");
+        }
+
+        public long getDatelong(final int index) { return datelongs[checkIndex(index)]; }
+
+        public double getSgv(final int index) { return sgvs[checkIndex(index)]; }
+
+        public Trend getTrend(final int index) { return Trend.values()[trends[checkIndex(index)]]; }
+
+        public String getDirection(final int index) { return directions.get(directionKeys[checkIndex(index)]); }
+
+        public String getDevice(final int index) { return devices.get(deviceKeys[checkIndex(index)]); }
+
+        public long getFirstTimestamp() { return isEmpty() ? 0 : datelongs[from]; }
+
+        public long getLastTimestamp() { return isEmpty() ? 0 : datelongs[to - 1]; }
+
+        // Entries with from <= datelong < to
+        public View range(final long fromEpochSeconds, final long toEpochSeconds) {
+            final int start = lowerBound(datelongs, from, to, fromEpochSeconds);
+            final int end   = lowerBound(datelongs, start, to, toEpochSeconds);
+            return new View(datelongs, sgvs, trends, directionKeys, deviceKeys, directions, devices, start, end);
+        }
+
+        // Entries with datelong >= epochSeconds
+        public View since(final long epochSeconds) {
+            return new View(datelongs, sgvs, trends, directionKeys, deviceKeys, directions, devices, lowerBound(datelongs, from, to, epochSeconds), to);
+        }
+
+        // The last noOfEntries entries (the newest ones)
+        public View last(final int noOfEntries) {
+            return new View(datelongs, sgvs, trends, directionKeys, deviceKeys, directions, devices, Math.max(from, to - noOfEntries), to);
+        }
+
+        @Override public View subList(final int fromIndex, final int toIndex) {
+            if (fromIndex < 0 || toIndex > size() || fromIndex > toIndex) { throw new IndexOutOfBoundsException("fromIndex: " + fromIndex + ", toIndex: " + toIndex + ", size: " + size()); }
+            return new View(datelongs, sgvs, trends, directionKeys, deviceKeys, directions, devices, from + fromIndex, from + toIndex);
+        }
+
+        public double sum() {
+            double sum = 0;
+            for (int i = from ; i < to ; i++) { sum += sgvs[i]; }
+            return sum;
+        }
+
+        public double average() { return isEmpty() ? 0 : sum() / size(); }
+
+        public double[] toSgvArray() {
+            final double[] values = new double[size()];
+            for (int i = from ; i < to ; i++) { values[i - from] = sgvs[i]; }
+            return values;
+        }
+
+        public List<Double> toSgvList() {
+            final List<Double> values = new ArrayList<>(size());
+            for (int i = from ; i < to ; i++) { values.add((double) sgvs[i]); }
+            return values;
+        }
+
+
+        // ******************** Private Methods *******************************
+        private int checkIndex(final int index) {
+            if (index < 0 || index >= to - from) { throw new IndexOutOfBoundsException("Index: " + index + ", size: " + (to - from)); }
+            return from + index;
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import javafx.event.Event;
+import javafx.event.EventTarget;
+import javafx.event.EventType;
+
+
+public class GlucoSeriesEvent extends Event {
+    public static final EventType<GlucoSeriesEvent> SERIES_CHANGED = new EventType(ANY, "SERIES_CHANGED");
+
+    public final GlucoSeries.View view;
+    public final int              noOfInserted;
+    public final int              noOfRemoved;
+
+
+    // ******************** Constructors **************************************
+    public GlucoSeriesEvent(final GlucoSeries.View view, final int noOfInserted, final int noOfRemoved, final Object source, final EventTarget target, final EventType<GlucoSeriesEvent> type) {
+        super(source, target, type);
+        this.view         = view;
+        this.noOfInserted = noOfInserted;
+        this.noOfRemoved  = noOfRemoved;
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+/**
+ * Glycemic variability metrics of a range of readings, all values in mg/dl.
+ * Everything apart from MAGE is calculated in one pass over the columns of the view,
+ * MAGE needs the standard deviation and is calculated in a second pass over the
+ * turning points only.
+ * The time in ranges use the zones of the given ThresholdProfile (see ThresholdProfile.getZone()).
+ */
+public record GlycemicMetrics(int count, double mean, double stdDev, double cv, double gmi, double mage, double modd, double conga, double lbgi, double hbgi,
+                              double pTooLow, double pLow, double pNormal, double pHigh, double pTooHigh) {
+    public  static final GlycemicMetrics EMPTY         = new GlycemicMetrics(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+    public  static final long            CONGA_LAG     = Constants.SECONDS_PER_HOUR;
+    public  static final long            MODD_LAG      = 24 * Constants.SECONDS_PER_HOUR;
+    // Readings are compared with the reading that is closest to the lag within this tolerance
+    private static final long            LAG_TOLERANCE = 150;
+    private static final double[]        RISK_LOOKUP   = new double[ThresholdProfile.MAX_LOOKUP_VALUE + 1];
+    static {
+        for (int value = 1 ; value < RISK_LOOKUP.length ; value++) { RISK_LOOKUP[value] = calcRiskFunction(value); }
+    }
+
+
+    // ******************** Methods *******************************************
+    public static GlycemicMetrics of(final GlucoSeries.View view) { return of(view, ThresholdProfile.getCurrent()); }
+    /**
+     * Calculates all metrics for the given readings
+     * @param view readings sorted by date in ascending order
+     * @param profile thresholds for the time in ranges
+     * @return the metrics or EMPTY if there are no readings
+     */
+    public static GlycemicMetrics of(final GlucoSeries.View view, final ThresholdProfile profile) {
+        final int n = view.size();
+        if (0 == n) { return EMPTY; }
+
+        final double[] turningPoints     = new double[n];
+        int            noOfTurningPoints = 0;
+        double         sum               = 0;
+        double         sumOfSquares      = 0;
+        double         lowRisk           = 0;
+        double         highRisk          = 0;
+        int            tooLow            = 0;
+        int            low               = 0;
+        int            normal            = 0;
+        int            high              = 0;
+        int            tooHigh           = 0;
+        double         moddSum           = 0;
+        int            moddCount         = 0;
+        double         congaSum          = 0;
+        double         congaSumSquares   = 0;
+        int            congaCount        = 0;
+        int            moddIndex         = 0;
+        int            congaIndex        = 0;
+        double         lastValue         = view.getSgv(0);
+        int            direction         = 0;
+
+        turningPoints[noOfTurningPoints++] = lastValue;
+        for (int i = 0 ; i < n ; i++) {
+            final long   datelong = view.getDatelong(i);
+            final double value    = view.getSgv(i);
+
+            sum          += value;
+            sumOfSquares += value * value;
+
+            // Risk indices
+            final double f = riskFunction(value);
+            if (f < 0) {
+                lowRisk  += 10 * f * f;
+            } else {
+                highRisk += 10 * f * f;
+            }
+
+            // Time in ranges
+            switch (profile.getZone(value)) {
+                case TOO_LOW  -> tooLow++;
+                case LOW      -> low++;
+                case NORMAL   -> normal++;
+                case HIGH     -> high++;
+                case TOO_HIGH -> tooHigh++;
+            }
+
+            // MODD and CONGA, the lagged readings are found with two pointers that only move forward
+            moddIndex = skipOlder(view, moddIndex, i, datelong - MODD_LAG - LAG_TOLERANCE);
+            final int moddClosest = getClosest(view, moddIndex, i, datelong - MODD_LAG);
+            if (moddClosest < i && view.getDatelong(moddClosest) <= datelong - MODD_LAG + LAG_TOLERANCE) {
+                moddSum += Math.abs(value - view.getSgv(moddClosest));
+                moddCount++;
+            }
+            congaIndex = skipOlder(view, congaIndex, i, datelong - CONGA_LAG - LAG_TOLERANCE);
+            final int congaClosest = getClosest(view, congaIndex, i, datelong - CONGA_LAG);
+            if (congaClosest < i && view.getDatelong(congaClosest) <= datelong - CONGA_LAG + LAG_TOLERANCE) {
+                final double delta = value - view.getSgv(congaClosest);
+                congaSum        += delta;
+                congaSumSquares += delta * delta;
+                congaCount++;
+            }
+
+            // Turning points for MAGE, plateaus are skipped
+            if (value != lastValue) {
+                final int newDirection = value > lastValue ? 1 : -1;
+                if (0 != direction && newDirection != direction) { turningPoints[noOfTurningPoints++] = lastValue; }
+                direction = newDirection;
+                lastValue = value;
+            }
+        }
+        if (noOfTurningPoints < n) { turningPoints[noOfTurningPoints++] = lastValue; }
+
+        final double mean      = sum / n;
+        final double stdDev    = Math.sqrt(Math.max(0, sumOfSquares / n - mean * mean));
+        final double congaMean = 0 == congaCount ? 0 : congaSum / congaCount;
+        final double conga     = 0 == congaCount ? 0 : Math.sqrt(Math.max(0, congaSumSquares / congaCount - congaMean * congaMean));
+        return new GlycemicMetrics(n, mean, stdDev, 0 == mean ? 0 : stdDev / mean * 100, 3.31 + 0.02392 * mean, calcMage(turningPoints, noOfTurningPoints, stdDev),
+                                   0 == moddCount ? 0 : moddSum / moddCount, conga, lowRisk / n, highRisk / n,
+                                   (double) tooLow / n, (double) low / n, (double) normal / n, (double) high / n, (double) tooHigh / n);
+    }
+
+    // Time below range (tooLow + low) 0 - 1
+    public double pBelowRange() { return pTooLow + pLow; }
+
+    // Time above range (high + tooHigh) 0 - 1
+    public double pAboveRange() { return pHigh + pTooHigh; }
+
+
+    // ******************** Private Methods ***********************************
+    // Returns the first index in [start, current] with a datelong >= epochSeconds or current
+    private static int skipOlder(final GlucoSeries.View view, final int start, final int current, final long epochSeconds) {
+        int index = start;
+        while (index < current && view.getDatelong(index) < epochSeconds) { index++; }
+        return index;
+    }
+
+    // Returns the index in [start, current) with the datelong that is closest to epochSeconds or current if start == current
+    private static int getClosest(final GlucoSeries.View view, final int start, final int current, final long epochSeconds) {
+        int index = start;
+        while (index + 1 < current && Math.abs(view.getDatelong(index + 1) - epochSeconds) < Math.abs(view.getDatelong(index) - epochSeconds)) { index++; }
+        return index;
+    }
+
+    /**
+     * Mean amplitude of all excursions (peak to nadir and nadir to peak) that are larger than
+     * one standard deviation. Smaller fluctuations within an excursion are ignored.
+     */
+    private static double calcMage(final double[] turningPoints, final int noOfTurningPoints, final double stdDev) {
+        if (noOfTurningPoints < 2 || 0 == stdDev) { return 0; }
+        double pivot           = turningPoints[0];
+        double extreme         = turningPoints[0];
+        double lowest          = turningPoints[0];
+        double highest         = turningPoints[0];
+        int    direction       = 0;
+        double sumOfAmplitudes = 0;
+        int    noOfExcursions  = 0;
+        for (int i = 1 ; i < noOfTurningPoints ; i++) {
+            final double value = turningPoints[i];
+            if (0 == direction) {
+                // Wait for the first movement that is larger than the standard deviation
+                lowest  = Math.min(lowest, value);
+                highest = Math.max(highest, value);
+                if (value - lowest > stdDev) {
+                    pivot     = lowest;
+                    extreme   = value;
+                    direction = 1;
+                } else if (highest - value > stdDev) {
+                    pivot     = highest;
+                    extreme   = value;
+                    direction = -1;
+                }
+            } else if (direction > 0) {
+                if (value > extreme) {
+                    extreme = value;
+                } else if (extreme - value > stdDev) {
+                    sumOfAmplitudes += extreme - pivot;
+                    noOfExcursions++;
+                    pivot     = extreme;
+                    extreme   = value;
+                    direction = -1;
+                }
+            } else {
+                if (value < extreme) {
+                    extreme = value;
+                } else if (value - extreme > stdDev) {
+                    sumOfAmplitudes += pivot - extreme;
+                    noOfExcursions++;
+                    pivot     = extreme;
+                    extreme   = value;
+                    direction = 1;
+                }
+            }
+        }
+        if (0 != direction && Math.abs(extreme - pivot) > stdDev) {
+            sumOfAmplitudes += Math.abs(extreme - pivot);
+            noOfExcursions++;
+        }
+        return 0 == noOfExcursions ? 0 : sumOfAmplitudes / noOfExcursions;
+    }
+
+    /**
+     * Symmetrized blood glucose scale by Kovatchev et al., < 0 for low and > 0 for high values.
+     * Whole mg/dl values are taken from the lookup table, values in between are interpolated
+     * linearly (the error is far below the precision of the sensor).
+     */
+    private static double riskFunction(final double value) {
+        if (value < 1) { return RISK_LOOKUP[1]; }
+        final int index = (int) value;
+        if (index >= RISK_LOOKUP.length - 1) { return calcRiskFunction(value); }
+        final double fraction = value - index;
+        return 0 == fraction ? RISK_LOOKUP[index] : RISK_LOOKUP[index] + fraction * (RISK_LOOKUP[index + 1] - RISK_LOOKUP[index]);
+    }
+
+    private static double calcRiskFunction(final double value) { return 1.509 * (Math.pow(Math.log(value), 1.084) - 5.381); }
+}
@@ -48,14 +48,11 @@ import java.awt.image.BufferedImage;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpClient.Redirect;
-import java.net.http.HttpClient.Version;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
-import java.net.http.HttpResponse.BodyHandlers;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
@@ -95,8 +92,6 @@ import static eu.hansolo.toolbox.unit.UnitDefinition.MILLIMOL_PER_LITER;
 public class Helper {
     private static final Converter  MGDL_CONVERTER = new Converter(BLOOD_GLUCOSE, MILLIGRAM_PER_DECILITER);
     private static final Converter  MMOL_CONVERTER = new Converter(BLOOD_GLUCOSE, MILLIMOL_PER_LITER);
-    private static       HttpClient httpClient;
-    private static       HttpClient httpClientAsync;
 
     public static final List<GlucoEntry> getEntries(final String jsonText) {
         final List<GlucoEntry> entries = new ArrayList<>();
@@ -147,20 +142,8 @@ public class Helper {
     public static final Color getColorForValue2(final UnitDefinition unit, final double value) { return Status.getByValue(unit, value).getColor2(); }
 
     public static final CompletableFuture<List<GlucoEntry>> getEntriesFromInterval(final Interval interval, final String nightscoutUrl, final String apiSecret, final String token) {
-        final long          now        = Instant.now().getEpochSecond();
-        final long          from       = (now - interval.getSeconds()) * 1000;
-        final long          to         = now * 1000;
-        final StringBuilder urlBuilder = new StringBuilder().append(nightscoutUrl).append("?find[date][$gte]=").append(from).append("&find[date][$lte]=").append(to).append("&count=").append(interval.getNoOfEntries());
-        if (null != token && !token.isEmpty()) { urlBuilder.append("&token=").append(token); }
-        final String url = urlBuilder.toString();
-        CompletableFuture<List<GlucoEntry>> cf = getAsync(url ,apiSecret).thenApply(r -> {
-            if (null == r || null == r.body() || r.body().isEmpty()) {
-                return new ArrayList<>();
-            } else {
-                return getGlucoEntries(r.body());
-            }
-        });
-        return cf;
+        final long now = Instant.now().getEpochSecond();
+        return new Backfill(nightscoutUrl, apiSecret, token).fetch(now - interval.getSeconds(), now + 1);
     }
 
     public static final double mmolPerLiterToMgPerDeciliter(final double mmolPerLiter) {
@@ -189,6 +172,13 @@ public class Helper {
         }
         return hba1c;
     }
+    public static final double calcHbA1c(final GlucoSeries.View entries) {
+        if (entries.isEmpty()) { return 0; }
+        return calcHbA1c(entries.average());
+    }
+    public static final double calcHbA1c(final double average) {
+        return (0.0296 * average) + 2.419; // formula from 2014 (https://www.ncbi.nlm.nih.gov/pmc/articles/PMC4771657/)
+    }
 
     public static final Pair<List<Point>, List<Point>> createValueRangePath(final Map<LocalTime, DataPoint> dataMap, final StatisticRange range, final boolean smoothed) {
         List<LocalTime> sortedKeys         = dataMap.keySet().stream().sorted().collect(Collectors.toList());
@@ -352,28 +342,18 @@ public class Helper {
 
 
     // ******************** REST calls ****************************************
-    private static HttpClient createHttpClient() {
-        return HttpClient.newBuilder()
-                         .connectTimeout(Duration.ofSeconds(20))
-                         .version(Version.HTTP_2)
-                         .followRedirects(Redirect.NORMAL)
-                         //.executor(Executors.newFixedThreadPool(4))
-                         .build();
-    }
-
     public static final HttpResponse<String> get(final String uri, final String apiSecret) {
-        if (null == httpClient) { httpClient = createHttpClient(); }
-
         HttpRequest request = HttpRequest.newBuilder()
                                          .GET()
                                          .uri(URI.create(uri))
                                          .setHeader("Accept", "application/json")
                                          .setHeader("User-Agent", "GlucoStatusFX")
+                                         .setHeader("Accept-Encoding", ContentDecoding.ACCEPT_ENCODING)
                                          .setHeader("API_SECRET", apiSecret)
                                          .timeout(Duration.ofSeconds(60))
                                          .build();
         try {
-            HttpResponse<String> response = httpClient.send(request, BodyHandlers.ofString());
+            HttpResponse<String> response = HttpService.INSTANCE.send(request, ContentDecoding.ofString());
             if (response.statusCode() == 200) {
                 return response;
             } else {
@@ -386,17 +366,61 @@ public class Helper {
     }
 
     public static final CompletableFuture<HttpResponse<String>> getAsync(final String uri, final String apiSecret) {
-        if (null == httpClientAsync) { httpClientAsync = createHttpClient(); }
+        final HttpRequest request = HttpRequest.newBuilder()
+                                               .GET()
+                                               .uri(URI.create(uri))
+                                               .setHeader("Accept", "application/json")
+                                               .setHeader("User-Agent", "GlucoStatusFX")
+                                               .setHeader("Accept-Encoding", ContentDecoding.ACCEPT_ENCODING)
+                                               .setHeader("API_SECRET", apiSecret)
+                                               .timeout(Duration.ofSeconds(60))
+                                               .build();
+        return HttpService.INSTANCE.sendAsync(request, ContentDecoding.ofString());
+    }
 
+    public static final HttpResponse<InputStream> getInputStream(final String uri, final String apiSecret) {
         final HttpRequest request = HttpRequest.newBuilder()
                                                .GET()
                                                .uri(URI.create(uri))
                                                .setHeader("Accept", "application/json")
                                                .setHeader("User-Agent", "GlucoStatusFX")
+                                               .setHeader("Accept-Encoding", ContentDecoding.ACCEPT_ENCODING)
                                                .setHeader("API_SECRET", apiSecret)
                                                .timeout(Duration.ofSeconds(60))
                                                .build();
-        return httpClientAsync.sendAsync(request, BodyHandlers.ofString());
+        try {
+            return HttpService.INSTANCE.send(request, ContentDecoding.ofInputStream());
+        } catch (CompletionException | InterruptedException | IOException e) {
+            return null;
+        }
+    }
+
+    public static final CompletableFuture<HttpResponse<InputStream>> getInputStreamAsync(final String uri, final String apiSecret) {
+        final HttpRequest request = HttpRequest.newBuilder()
+                                               .GET()
+                                               .uri(URI.create(uri))
+                                               .setHeader("Accept", "application/json")
+                                               .setHeader("User-Agent", "GlucoStatusFX")
+                                               .setHeader("Accept-Encoding", ContentDecoding.ACCEPT_ENCODING)
+                                               .setHeader("API_SECRET", apiSecret)
+                                               .timeout(Duration.ofSeconds(60))
+                                               .build();
+        return HttpService.INSTANCE.sendAsync(request, ContentDecoding.ofInputStream());
     }
 
+    // Connectivity probe, a HEAD request is enough to know that the uri can be reached
+    public static final boolean isReachable(final String uri) {
+        final HttpRequest request = HttpRequest.newBuilder()
+                                               .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                                               .uri(URI.create(uri))
+                                               .setHeader("User-Agent", "GlucoStatusFX")
+                                               .timeout(Duration.ofSeconds(20))
+                                               .build();
+        try {
+            HttpService.INSTANCE.send(request, HttpResponse.BodyHandlers.discarding());
+            return true;
+        } catch (InterruptedException | IOException e) {
+            return false;
+        }
+    }
 }
@@ -0,0 +1,173 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Redirect;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandler;
+import java.net.http.HttpResponse.BodySubscribers;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ * The one HttpClient that is used for all requests (Nightscout, release check, connectivity).
+ * Requests run on virtual threads, the number of concurrent requests per endpoint is limited
+ * and the latency of every request is recorded per endpoint (host + path).
+ */
+public enum HttpService {
+    INSTANCE;
+
+    public  static final int                           MAX_REQUESTS_PER_ENDPOINT = 4;
+    private        final ExecutorService               executor;
+    private        final HttpClient                    httpClient;
+    private        final Map<String, Semaphore>        limits;
+    private        final Map<String, LatencyHistogram> histograms;
+    private        final AtomicInteger                 noOfRequestsInFlight;
+
+
+    // ******************** Constructors **************************************
+    HttpService() {
+        executor             = Executors.newVirtualThreadPerTaskExecutor();
+        // One client for all requests, so connections (and HTTP/2 streams) are reused
+        httpClient           = HttpClient.newBuilder()
+                                         .connectTimeout(Duration.ofSeconds(20))
+                                         .version(Version.HTTP_2)
+                                         .followRedirects(Redirect.NORMAL)
+                                         .executor(executor)
+                                         .build();
+        limits               = new ConcurrentHashMap<>();
+        histograms           = new ConcurrentHashMap<>();
+        noOfRequestsInFlight = new AtomicInteger(0);
+    }
+
+
+    // ******************** Methods *******************************************
+    public ExecutorService getExecutor() { return executor; }
+
+    public int getNoOfRequestsInFlight() { return noOfRequestsInFlight.get(); }
+
+    public Map<String, LatencyHistogram> getHistograms() { return Collections.unmodifiableMap(histograms); }
+
+    public LatencyHistogram getHistogram(final String uri) { return histograms.computeIfAbsent(getEndpoint(URI.create(uri)), endpoint -> new LatencyHistogram()); }
+
+    /**
+     * Blocking call that waits for a free slot of the endpoint before the request is sent.
+     * For streamed bodies (InputStream) the recorded latency is the time until the response headers arrived,
+     * but the slot is only freed when the stream is closed, so the caller has to close it.
+     */
+    public <T> HttpResponse<T> send(final HttpRequest request, final BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        final String           endpoint  = getEndpoint(request.uri());
+        final Semaphore        limit     = limits.computeIfAbsent(endpoint, e -> new Semaphore(MAX_REQUESTS_PER_ENDPOINT, true));
+        final LatencyHistogram histogram = histograms.computeIfAbsent(endpoint, e -> new LatencyHistogram());
+        limit.acquire();
+        noOfRequestsInFlight.incrementAndGet();
+        final Permit    permit   = new Permit(limit);
+        final long      start    = System.nanoTime();
+        HttpResponse<T> response = null;
+        boolean         success  = false;
+        try {
+            response = httpClient.send(request, responseInfo -> BodySubscribers.mapping(bodyHandler.apply(responseInfo), body -> permit.wrap(body)));
+            success  = response.statusCode() < 400;
+            return response;
+        } finally {
+            histogram.record((System.nanoTime() - start) / 1_000_000, success);
+            // A streamed body is still downloading, its stream releases the permit when it's closed
+            if (null == response || !(response.body() instanceof PermitInputStream)) { permit.release(); }
+        }
+    }
+
+    // Runs the blocking send on a virtual thread, so waiting for a slot does not block a platform thread
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(final HttpRequest request, final BodyHandler<T> bodyHandler) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return send(request, bodyHandler);
+            } catch (IOException | InterruptedException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+
+
+    // ******************** Private Methods ***********************************
+    private static String getEndpoint(final URI uri) {
+        return new StringBuilder().append(uri.getHost()).append(null == uri.getPath() ? "" : uri.getPath()).toString();
+    }
+
+
+    // ******************** Inner Classes *************************************
+    // Slot of an endpoint that is released exactly once
+    private class Permit {
+        private final Semaphore     limit;
+        private final AtomicBoolean released;
+
+
+        Permit(final Semaphore limit) {
+            this.limit    = limit;
+            this.released = new AtomicBoolean(false);
+        }
+
+
+        @SuppressWarnings("unchecked")
+        <T> T wrap(final T body) {
+            return body instanceof InputStream inputStream ? (T) new PermitInputStream(inputStream, this) : body;
+        }
+
+        void release() {
+            if (released.getAndSet(true)) { return; }
+            noOfRequestsInFlight.decrementAndGet();
+            limit.release();
+        }
+    }
+
+    private static class PermitInputStream extends FilterInputStream {
+        private final Permit permit;
+
+
+        PermitInputStream(final InputStream inputStream, final Permit permit) {
+            super(inputStream);
+            this.permit = permit;
+        }
+
+
+        @Override public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                permit.release();
+            }
+        }
+    }
+}
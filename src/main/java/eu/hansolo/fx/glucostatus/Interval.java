@@ -25,6 +25,9 @@ import java.time.format.DateTimeFormatter;
 
 
 public enum Interval {
+    ALL(Integer.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE, DateTimeFormatter.ofPattern("yyyy"), 0.75), // All stored history
+    LAST_8760_HOURS(105_120, 8_760, 31_536_000, DateTimeFormatter.ofPattern("MM"), 0.75), // 1 Year
+    LAST_4320_HOURS(51_840, 4_320, 15_552_000, DateTimeFormatter.ofPattern("MM"), 0.75),  // 180 Days
     LAST_2160_HOURS(25_920, 2_160, 7_776_000, DateTimeFormatter.ofPattern("DD"), 0.75), // 90 Days
     LAST_720_HOURS(8_640, 720, 2_592_000, DateTimeFormatter.ofPattern("DD"), 0.75),     // 30 Days
     LAST_336_HOURS(4_032, 336, 1_209_600, DateTimeFormatter.ofPattern("DD"), 1.0),      // 14 Days
@@ -45,7 +48,7 @@ public enum Interval {
 
 
     // ******************** Constructors **************************************
-    Interval(final int noOfEntries, final int hours, final int seconds, final DateTimeFormatter formatter, final double lineWidth) {
+    Interval(final int noOfEntries, final int hours, final long seconds, final DateTimeFormatter formatter, final double lineWidth) {
         this.noOfEntries = noOfEntries;
         this.hours       = hours;
         this.seconds     = seconds;
@@ -57,6 +60,9 @@ public enum Interval {
     // ******************** Methods *******************************************
     public String getUiString() {
         switch(this) {
+            case ALL             -> { return translator.get(I18nKeys.TIME_RANGE_ALL); }
+            case LAST_8760_HOURS -> { return translator.get(I18nKeys.TIME_RANGE_8760_HOURS); }
+            case LAST_4320_HOURS -> { return translator.get(I18nKeys.TIME_RANGE_4320_HOURS); }
             case LAST_2160_HOURS -> { return translator.get(I18nKeys.TIME_RANGE_2160_HOURS); }
             case LAST_720_HOURS  -> { return translator.get(I18nKeys.TIME_RANGE_720_HOURS); }
             case LAST_336_HOURS  -> { return translator.get(I18nKeys.TIME_RANGE_336_HOURS); }
@@ -0,0 +1,242 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+
+/**
+ * Rolling aggregates (count, sum, sum of squares, min, max and time in range counters) for each Interval.
+ * Every window is a queue of readings, new readings are added at the end and expired ones are removed
+ * from the start, both in O(1). Min and max are kept in monotonic queues (amortized O(1)).
+ * The time in range counters use the zones of the ThresholdProfile (see ThresholdProfile.getZone()).
+ */
+public class IntervalAggregates {
+    private final Map<Interval, Window> windows;
+    private       ThresholdProfile      profile;
+    private       long                  lastTimestamp;
+
+
+    // ******************** Constructors **************************************
+    public IntervalAggregates() {
+        this.windows = new EnumMap<>(Interval.class);
+        for (Interval interval : Interval.values()) { windows.put(interval, new Window(interval)); }
+        loadThresholds();
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Adds the readings that are newer than the last update and expires the ones that left the windows.
+     * @param view all available entries sorted by date in ascending order
+     */
+    public synchronized void update(final GlucoSeries.View view) {
+        final long now = Instant.now().getEpochSecond();
+        if (view.isEmpty() || view.getLastTimestamp() < lastTimestamp) {
+            rebuild(view, now);
+            return;
+        }
+        final GlucoSeries.View added = view.since(lastTimestamp + 1);
+        for (Window window : windows.values()) {
+            for (int i = 0 ; i < added.size() ; i++) { window.add(added.getDatelong(i), added.getSgv(i)); }
+            window.expire(window.getFrom(now));
+            // Readings that have been inserted in between (e.g. backfilled history) need a rebuild
+            if (window.count != view.since(window.getFrom(now)).size()) {
+                rebuild(view, now);
+                return;
+            }
+        }
+        lastTimestamp = view.getLastTimestamp();
+    }
+
+    // Takes the time in range thresholds from the current ThresholdProfile, call update() afterwards
+    public synchronized void loadThresholds() {
+        profile       = ThresholdProfile.getCurrent();
+        lastTimestamp = Long.MAX_VALUE;
+    }
+
+    // Constant time snapshot of the given window
+    public synchronized Aggregate get(final Interval interval) { return windows.get(interval).toAggregate(); }
+
+
+    // ******************** Private Methods ***********************************
+    private void rebuild(final GlucoSeries.View view, final long now) {
+        for (Window window : windows.values()) {
+            window.clear();
+            final GlucoSeries.View entries = view.since(window.getFrom(now));
+            for (int i = 0 ; i < entries.size() ; i++) { window.add(entries.getDatelong(i), entries.getSgv(i)); }
+        }
+        lastTimestamp = view.isEmpty() ? 0 : view.getLastTimestamp();
+    }
+
+
+    // ******************** Inner Classes *************************************
+    public record Aggregate(Interval interval, long count, double sum, double sumOfSquares, double min, double max, long tooLow, long low, long normal, long high, long tooHigh) {
+        public double average() { return count == 0 ? 0 : sum / count; }
+
+        // Population standard deviation
+        public double stdDev() { return count == 0 ? 0 : Math.sqrt(Math.max(0, sumOfSquares / count - average() * average())); }
+
+        public double hba1c() { return count == 0 ? 0 : Helper.calcHbA1c(average()); }
+
+        public double pTooLow() { return count == 0 ? 0 : (double) tooLow / count; }
+
+        public double pLow() { return count == 0 ? 0 : (double) low / count; }
+
+        public double pNormal() { return count == 0 ? 0 : (double) normal / count; }
+
+        public double pHigh() { return count == 0 ? 0 : (double) high / count; }
+
+        public double pTooHigh() { return count == 0 ? 0 : (double) tooHigh / count; }
+    }
+
+    private class Window {
+        private final Interval  interval;
+        private final TimeQueue values;
+        private final TimeQueue minQueue;
+        private final TimeQueue maxQueue;
+        private       long      count;
+        private       double    sum;
+        private       double    sumOfSquares;
+        private       long      tooLow;
+        private       long      low;
+        private       long      normal;
+        private       long      high;
+        private       long      tooHigh;
+
+
+        // ******************** Constructors **********************************
+        Window(final Interval interval) {
+            this.interval = interval;
+            this.values   = new TimeQueue();
+            this.minQueue = new TimeQueue();
+            this.maxQueue = new TimeQueue();
+        }
+
+
+        // ******************** Methods ***************************************
+        long getFrom(final long now) { return now - interval.getSeconds() + 1; }
+
+        void add(final long datelong, final double value) {
+            values.addLast(datelong, value);
+            count++;
+            sum          += value;
+            sumOfSquares += value * value;
+            count(value, 1);
+            // Values that can never become the min (max) again are dropped
+            while (!minQueue.isEmpty() && minQueue.lastValue() > value) { minQueue.removeLast(); }
+            minQueue.addLast(datelong, value);
+            while (!maxQueue.isEmpty() && maxQueue.lastValue() < value) { maxQueue.removeLast(); }
+            maxQueue.addLast(datelong, value);
+        }
+
+        void expire(final long from) {
+            while (!values.isEmpty() && values.firstDatelong() < from) {
+                final double value = values.firstValue();
+                values.removeFirst();
+                count--;
+                sum          -= value;
+                sumOfSquares -= value * value;
+                count(value, -1);
+            }
+            while (!minQueue.isEmpty() && minQueue.firstDatelong() < from) { minQueue.removeFirst(); }
+            while (!maxQueue.isEmpty() && maxQueue.firstDatelong() < from) { maxQueue.removeFirst(); }
+        }
+
+        void clear() {
+            values.clear();
+            minQueue.clear();
+            maxQueue.clear();
+            count        = 0;
+            sum          = 0;
+            sumOfSquares = 0;
+            tooLow       = 0;
+            low          = 0;
+            normal       = 0;
+            high         = 0;
+            tooHigh      = 0;
+        }
+
+        Aggregate toAggregate() {
+            final double min = minQueue.isEmpty() ? 0 : minQueue.firstValue();
+            final double max = maxQueue.isEmpty() ? 0 : maxQueue.firstValue();
+            return new Aggregate(interval, count, sum, sumOfSquares, min, max, tooLow, low, normal, high, tooHigh);
+        }
+
+        private void count(final double value, final int delta) {
+            switch (profile.getZone(value)) {
+                case TOO_LOW  -> tooLow  += delta;
+                case LOW      -> low     += delta;
+                case NORMAL   -> normal  += delta;
+                case HIGH     -> high    += delta;
+                case TOO_HIGH -> tooHigh += delta;
+            }
+        }
+    }
+
+    // Array based queue of (datelong, value) pairs
+    private static class TimeQueue {
+        private long[]   datelongs = new long[64];
+        private double[] values    = new double[64];
+        private int      head;
+        private int      tail;
+
+
+        boolean isEmpty() { return head == tail; }
+
+        long firstDatelong() { return datelongs[head]; }
+
+        double firstValue() { return values[head]; }
+
+        double lastValue() { return values[tail - 1]; }
+
+        void addLast(final long datelong, final double value) {
+            if (tail == datelongs.length) { makeRoom(); }
+            datelongs[tail] = datelong;
+            values[tail]    = value;
+            tail++;
+        }
+
+        void removeFirst() { head++; }
+
+        void removeLast() { tail--; }
+
+        void clear() {
+            head = 0;
+            tail = 0;
+        }
+
+        // Moves the content to the start and only grows if more than half of the array is in use
+        private void makeRoom() {
+            final int size     = tail - head;
+            final int capacity = size > datelongs.length / 2 ? datelongs.length * 2 : datelongs.length;
+            final long[]   newDatelongs = capacity == datelongs.length ? datelongs : Arrays.copyOf(datelongs, capacity);
+            final double[] newValues    = capacity == values.length    ? values    : Arrays.copyOf(values, capacity);
+            System.arraycopy(datelongs, head, newDatelongs, 0, size);
+            System.arraycopy(values, head, newValues, 0, size);
+            datelongs = newDatelongs;
+            values    = newValues;
+            head      = 0;
+            tail      = size;
+        }
+    }
+}
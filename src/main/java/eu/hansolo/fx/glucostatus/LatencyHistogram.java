@@ -0,0 +1,100 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Lock free latency histogram with fixed buckets from 10 ms up to 60 s.
+ * Percentiles are reported as the upper bound of the bucket they fall into.
+ */
+public class LatencyHistogram {
+    public  static final long[]          BUCKET_LIMITS_MS = { 10, 25, 50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 30_000, 60_000, Long.MAX_VALUE };
+    private        final AtomicLongArray counts;
+    private        final LongAdder       count;
+    private        final LongAdder       sum;
+    private        final LongAccumulator max;
+    private        final LongAdder       noOfFailures;
+
+
+    // ******************** Constructors **************************************
+    public LatencyHistogram() {
+        this.counts       = new AtomicLongArray(BUCKET_LIMITS_MS.length);
+        this.count        = new LongAdder();
+        this.sum          = new LongAdder();
+        this.max          = new LongAccumulator(Math::max, 0);
+        this.noOfFailures = new LongAdder();
+    }
+
+
+    // ******************** Methods *******************************************
+    public void record(final long millis, final boolean success) {
+        final long value = Math.max(0, millis);
+        int bucket = 0;
+        while (value > BUCKET_LIMITS_MS[bucket]) { bucket++; }
+        counts.incrementAndGet(bucket);
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+        if (!success) { noOfFailures.increment(); }
+    }
+
+    public long getCount() { return count.sum(); }
+
+    public long getNoOfFailures() { return noOfFailures.sum(); }
+
+    public long getMax() { return max.get(); }
+
+    public double getAverage() {
+        final long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    public long getCount(final int bucket) { return counts.get(bucket); }
+
+    /**
+     * @param percentile value between 0 and 100
+     * @return upper bound of the bucket that contains the given percentile in ms (max for the last bucket)
+     */
+    public long getPercentile(final double percentile) {
+        final long n = count.sum();
+        if (n == 0) { return 0; }
+        final long rank       = (long) Math.ceil(Math.max(0, Math.min(100, percentile)) / 100.0 * n);
+        long       cumulative = 0;
+        for (int i = 0 ; i < BUCKET_LIMITS_MS.length ; i++) {
+            cumulative += counts.get(i);
+            if (cumulative >= rank) { return i == BUCKET_LIMITS_MS.length - 1 ? getMax() : BUCKET_LIMITS_MS[i]; }
+        }
+        return getMax();
+    }
+
+    @Override public String toString() {
+        return new StringBuilder().append("count: ").append(getCount())
+                                  .append(", failures: ").append(getNoOfFailures())
+                                  .append(", avg: ").append(String.format(Locale.US, "%.1f", getAverage())).append(" ms")
+                                  .append(", p50: ").append(getPercentile(50)).append(" ms")
+                                  .append(", p95: ").append(getPercentile(95)).append(" ms")
+                                  .append(", max: ").append(getMax()).append(" ms")
+                                  .toString();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import javafx.beans.DefaultProperty;
+import javafx.collections.ObservableList;
+import javafx.scene.Node;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.layout.Region;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+
+
+/**
+ * Stack of transparent canvases, one per Layer. Every layer remembers the inputs it was drawn
+ * with, so a layer is only cleared and drawn again when its inputs change, the layer was
+ * invalidated or the size of the control changed.
+ */
+@DefaultProperty("children")
+public class LayeredCanvas extends Region {
+    private static final double             PREFERRED_WIDTH  = 820;
+    private static final double             PREFERRED_HEIGHT = 365;
+    private static final double             MINIMUM_WIDTH    = 50;
+    private static final double             MINIMUM_HEIGHT   = 50;
+    private static final double             MAXIMUM_WIDTH    = Double.MAX_VALUE;
+    private static final double             MAXIMUM_HEIGHT   = Double.MAX_VALUE;
+    private        final Map<Layer, Canvas> canvases;
+    private        final Map<Layer, Object> keys;
+    private              double             width;
+    private              double             height;
+
+
+    // ******************** Constructors **************************************
+    public LayeredCanvas() {
+        canvases = new EnumMap<>(Layer.class);
+        keys     = new EnumMap<>(Layer.class);
+
+        initGraphics();
+        registerListeners();
+    }
+
+
+    // ******************** Initialization ************************************
+    private void initGraphics() {
+        if (Double.compare(getPrefWidth(), 0.0) <= 0 || Double.compare(getPrefHeight(), 0.0) <= 0 || Double.compare(getWidth(), 0.0) <= 0 || Double.compare(getHeight(), 0.0) <= 0) {
+            if (getPrefWidth() > 0 && getPrefHeight() > 0) {
+                setPrefSize(getPrefWidth(), getPrefHeight());
+            } else {
+                setPrefSize(PREFERRED_WIDTH, PREFERRED_HEIGHT);
+            }
+        }
+
+        // Layers are added from bottom to top
+        for (Layer layer : Layer.values()) {
+            Canvas canvas = new Canvas(PREFERRED_WIDTH, PREFERRED_HEIGHT);
+            canvases.put(layer, canvas);
+            getChildren().add(canvas);
+        }
+        width  = PREFERRED_WIDTH;
+        height = PREFERRED_HEIGHT;
+    }
+
+    private void registerListeners() {
+        widthProperty().addListener(o -> resize());
+        heightProperty().addListener(o -> resize());
+    }
+
+
+    // ******************** Methods *******************************************
+    @Override protected double computeMinWidth(final double height)  { return MINIMUM_WIDTH; }
+    @Override protected double computeMinHeight(final double width)  { return MINIMUM_HEIGHT; }
+    @Override protected double computePrefWidth(final double height) { return super.computePrefWidth(height); }
+    @Override protected double computePrefHeight(final double width) { return super.computePrefHeight(width); }
+    @Override protected double computeMaxWidth(final double height)  { return MAXIMUM_WIDTH; }
+    @Override protected double computeMaxHeight(final double width)  { return MAXIMUM_HEIGHT; }
+
+    @Override public ObservableList<Node> getChildren() { return super.getChildren(); }
+
+    public double getCanvasWidth() { return width; }
+
+    public double getCanvasHeight() { return height; }
+
+    public GraphicsContext getGraphicsContext(final Layer layer) { return canvases.get(layer).getGraphicsContext2D(); }
+
+    /**
+     * Checks if the given layer has to be drawn. If so the layer will be cleared and the key
+     * will be stored, so the next call with an equal key returns false.
+     * @param layer the layer to check
+     * @param key all inputs of the layer (e.g. a List of the values the layer depends on)
+     * @return true if the layer was cleared and has to be drawn
+     */
+    public boolean prepare(final Layer layer, final Object key) {
+        if (keys.containsKey(layer) && Objects.equals(keys.get(layer), key)) { return false; }
+        keys.put(layer, key);
+        canvases.get(layer).getGraphicsContext2D().clearRect(0, 0, width, height);
+        return true;
+    }
+
+    public void invalidate(final Layer... layers) {
+        for (Layer layer : layers) { keys.remove(layer); }
+    }
+
+    public void invalidateAll() { keys.clear(); }
+
+
+    // ******************** Layout *******************************************
+    private void resize() {
+        width  = getWidth() - getInsets().getLeft() - getInsets().getRight();
+        height = getHeight() - getInsets().getTop() - getInsets().getBottom();
+
+        if (width > 0 && height > 0) {
+            canvases.values().forEach(canvas -> {
+                canvas.setWidth(width);
+                canvas.setHeight(height);
+                canvas.relocate(getInsets().getLeft(), getInsets().getTop());
+            });
+            invalidateAll();
+        }
+    }
+
+
+    // ******************** Inner Classes *************************************
+    public enum Layer {
+        GRID,
+        NIGHTS,
+        DATA,
+        OVERLAY
+    }
+}
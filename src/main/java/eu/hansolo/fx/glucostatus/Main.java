@@ -38,8 +38,7 @@ import eu.hansolo.applefx.MacosWindow;
 import eu.hansolo.applefx.MacosWindow.Style;
 import eu.hansolo.applefx.tools.MacosAccentColor;
 import eu.hansolo.applefx.tools.MacosSystemColor;
-import eu.hansolo.fx.glucostatus.Statistics.StatisticCalculation;
-import eu.hansolo.fx.glucostatus.Statistics.StatisticRange;
+import eu.hansolo.fx.glucostatus.LayeredCanvas.Layer;
 import eu.hansolo.fx.glucostatus.i18n.I18nKeys;
 import eu.hansolo.fx.glucostatus.i18n.Translator;
 import eu.hansolo.fx.glucostatus.notification.Notification;
@@ -59,11 +58,11 @@ import eu.hansolo.toolboxfx.geom.Point;
 import javafx.animation.FadeTransition;
 import javafx.application.Application;
 import javafx.application.Platform;
+import javafx.beans.InvalidationListener;
 import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleBooleanProperty;
-import javafx.collections.FXCollections;
-import javafx.collections.ListChangeListener;
-import javafx.collections.ObservableList;
+import javafx.beans.property.SimpleObjectProperty;
 import javafx.concurrent.ScheduledService;
 import javafx.concurrent.Task;
 import javafx.event.EventHandler;
@@ -130,9 +129,6 @@ import java.awt.*;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
-import java.net.URL;
-import java.net.URLConnection;
-import java.net.http.HttpResponse;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
@@ -140,15 +136,16 @@ import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Collectors;
 
 import static eu.hansolo.toolbox.unit.UnitDefinition.MILLIGRAM_PER_DECILITER;
 import static eu.hansolo.toolbox.unit.UnitDefinition.MILLIMOL_PER_LITER;
@@ -167,6 +164,10 @@ public class Main extends Application {
     private              String                        nightscoutUrl   = "";
     private              String                        apiSecret       = "";
     private              String                        token           = "";
+    private              EntryStore                    entryStore;
+    private              EntrySync                     entrySync;
+    private volatile     CompletableFuture<Void>       fullSync        = CompletableFuture.completedFuture(null);
+    private volatile     CompletableFuture<Void>       historySync     = CompletableFuture.completedFuture(null);
     private              MacosWindow                   macosWindow;
     private              boolean                       trayIconSupported;
     private              OsArcMode                     sysinfo;
@@ -231,12 +232,14 @@ public class Main extends Application {
     private              MacosSlider                   minNormalSlider;
     private              MacosSlider                   maxNormalSlider;
     private              MacosSlider                   maxAcceptableSlider;
-    private              Canvas                        canvas;
-    private              GraphicsContext               ctx;
+    private              LayeredCanvas                 canvas;
     private              AnchorPane                    chartPane;
     private              PoincarePlot                  poincarePlot;
     private              boolean                       deltaChartVisible;
     private              ToggleGroup                   intervalToggleGroup;
+    private              MacosToggleButton             allDays;
+    private              MacosToggleButton             oneYear;
+    private              MacosToggleButton             oneEightyDays;
     private              MacosToggleButton             ninetyDays;
     private              MacosToggleButton             thirtyDays;
     private              MacosToggleButton             fourteenDays;
@@ -268,8 +271,19 @@ public class Main extends Application {
     private              double                        maxAcceptableFactor;
     private              UnitDefinition                currentUnit;
     private              boolean                       outdated;
-    private              ObservableList<GlucoEntry>    allEntries;
-    private              List<GlucoEntry>              entries;
+    private              GlucoSeries                   allEntries;
+    private              GlucoSeries.View              entries;
+    private              Map<Interval, PatternSketch>  patternSketches;
+    private              IntervalAggregates            aggregates;
+    private              TieredHistory                 history;
+    private              TimeAxis                      timeAxis;
+    private              Downsampler                   downsampler;
+    private              RedrawScheduler.Task          chartRedraw;
+    private volatile     ChartData                     chartData;
+    private              AtomicBoolean                 chartDataPending;
+    private              ObjectProperty<AnalysisSnapshot> snapshot;
+    private              ExecutorService               analysisExecutor;
+    private              AtomicBoolean                 analysisPending;
     private              List<Double>                  deltas;
     private              double                        avg;
     private              BooleanProperty               dialogVisible;
@@ -308,8 +322,18 @@ public class Main extends Application {
         currentUnit       = MILLIGRAM_PER_DECILITER;
         outdated          = false;
         currentInterval   = Interval.LAST_24_HOURS;
-        allEntries        = FXCollections.observableArrayList();
-        entries           = new ArrayList<>();
+        allEntries        = new GlucoSeries();
+        entries           = allEntries.getView();
+        patternSketches   = new ConcurrentHashMap<>();
+        aggregates        = new IntervalAggregates();
+        history           = new TieredHistory();
+        timeAxis          = new TimeAxis();
+        downsampler       = new Downsampler();
+        chartRedraw       = RedrawScheduler.INSTANCE.createTask("Main chart", this::drawChart);
+        chartDataPending  = new AtomicBoolean(false);
+        snapshot          = new SimpleObjectProperty<>(AnalysisSnapshot.EMPTY);
+        analysisExecutor  = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("analysis").factory());
+        analysisPending   = new AtomicBoolean(false);
         deltas            = new ArrayList<>();
         dialogVisible     = new SimpleBooleanProperty(false);
         deltaChartVisible = false;
@@ -343,6 +367,9 @@ public class Main extends Application {
         };
 
         intervalToggleGroup = new ToggleGroup();
+        allDays          = createToggleButton(translator.get(I18nKeys.TIME_NAME_ALL), intervalToggleGroup, eventConsumer, darkMode);
+        oneYear          = createToggleButton(translator.get(I18nKeys.TIME_NAME_8760_HOURS), intervalToggleGroup, eventConsumer, darkMode);
+        oneEightyDays    = createToggleButton(translator.get(I18nKeys.TIME_NAME_4320_HOURS), intervalToggleGroup, eventConsumer, darkMode);
         ninetyDays       = createToggleButton(translator.get(I18nKeys.TIME_NAME_2160_HOURS), intervalToggleGroup, eventConsumer, darkMode);
         thirtyDays       = createToggleButton(translator.get(I18nKeys.TIME_NAME_720_HOURS), intervalToggleGroup, eventConsumer, darkMode);
         fourteenDays     = createToggleButton(translator.get(I18nKeys.TIME_NAME_336_HOURS), intervalToggleGroup, eventConsumer, darkMode);
@@ -363,7 +390,7 @@ public class Main extends Application {
         sep5 = createSeparator(darkMode);
         sep6 = createSeparator(darkMode);
 
-        toggleButtonBar = new MacosToggleButtonBar(ninetyDays, thirtyDays, fourteenDays, sevenDays, sep1, seventyTwoHours, sep2, fourtyEightHours, sep3, twentyFourHours, sep4, twelveHours, sep5, sixHours, sep6, threeHours);
+        toggleButtonBar = new MacosToggleButtonBar(allDays, oneYear, oneEightyDays, ninetyDays, thirtyDays, fourteenDays, sevenDays, sep1, seventyTwoHours, sep2, fourtyEightHours, sep3, twentyFourHours, sep4, twelveHours, sep5, sixHours, sep6, threeHours);
         toggleButtonBar.setDark(darkMode);
         HBox.setHgrow(toggleButtonBar, Priority.ALWAYS);
 
@@ -384,7 +411,7 @@ public class Main extends Application {
         buttonHBox.setPadding(new Insets(0, 10, 0, 10));
         buttonHBox.setAlignment(Pos.CENTER);
 
-        currentColor = null == currentEntry ? Constants.GRAY : Helper.getColorForValue(currentUnit, UnitDefinition.MILLIGRAM_PER_DECILITER == currentUnit ? currentEntry.sgv() : Helper.mgPerDeciliterToMmolPerLiter(currentEntry.sgv()));
+        currentColor = null == currentEntry ? Constants.GRAY : ThresholdProfile.getCurrent().getColor(currentEntry.sgv());
 
         titleLabel = createLabel(translator.get(I18nKeys.APP_NAME), 20, false, false, Pos.CENTER);
         AnchorPane.setTopAnchor(titleLabel, 5d);
@@ -467,8 +494,7 @@ public class Main extends Application {
         mainPane.setMinHeight(295);
         mainPane.setBackground(new Background(new BackgroundFill(Constants.GRAY, CornerRadii.EMPTY, Insets.EMPTY)));
 
-        canvas = new Canvas(820, 365);
-        ctx    = canvas.getGraphicsContext2D();
+        canvas = new LayeredCanvas();
         AnchorPane.setTopAnchor(canvas, 10d);
         AnchorPane.setRightAnchor(canvas, 5d);
         AnchorPane.setBottomAnchor(canvas, 5d);
@@ -532,6 +558,9 @@ public class Main extends Application {
         macosWindow.setDark(darkMode);
         aboutDialog = createAboutDialog();
         accentColor = eu.hansolo.applefx.tools.Helper.getMacosAccentColorAsColor();
+        allDays.setDark(darkMode);
+        oneYear.setDark(darkMode);
+        oneEightyDays.setDark(darkMode);
         ninetyDays.setDark(darkMode);
         thirtyDays.setDark(darkMode);
         fourteenDays.setDark(darkMode);
@@ -565,13 +594,13 @@ public class Main extends Application {
         patternChartButton.setFill(color);
         timeInRangeChartButton.setFill(color);
         stackedButton.setFill(color);
-        drawChart();
+        chartRedraw.request();
         exclamationMark.setFill(color);
 
         prefContentPane.setBackground(new Background(new BackgroundFill(darkMode ? MacosSystemColor.BACKGROUND.dark() : MacosSystemColor.BACKGROUND.aqua(), new CornerRadii(10), Insets.EMPTY)));
         eu.hansolo.applefx.tools.Helper.getAllNodes(prefPane).stream().filter(node -> node instanceof MacosControl).forEach(node -> ((MacosControl) node).setDark(darkMode));
 
-        drawChart();
+        chartRedraw.request();
     }
 
 
@@ -697,10 +726,7 @@ public class Main extends Application {
         stage.centerOnScreen();
         stage.setOnShowing(e -> {
             ZonedDateTime now = ZonedDateTime.now();
-            if (now.toEpochSecond() - lastUpdate.toEpochSecond() > 300) {
-                allEntries.clear();
-                Helper.getEntriesFromInterval(INTERVAL, nightscoutUrl + Constants.URL_API, apiSecret, token).thenAccept(l -> allEntries.addAll(l));
-            }
+            if (now.toEpochSecond() - lastUpdate.toEpochSecond() > 300) { loadEntries(); }
         });
         stage.setWidth(820);
         stage.setHeight(735);
@@ -712,15 +738,7 @@ public class Main extends Application {
 
     private void postStart() {
         if (null != nightscoutUrl && !nightscoutUrl.isEmpty()) {
-            Helper.getEntriesFromInterval(INTERVAL, nightscoutUrl + Constants.URL_API, apiSecret, token).thenAccept(l -> {
-                allEntries.addAll(l);
-                Platform.runLater(() -> {
-                    matrixButton.setOpacity(1.0);
-                    patternChartButton.setOpacity(1.0);
-                    stackedButton.setOpacity(1.0);
-                });
-                lastFullUpdate = ZonedDateTime.now();
-            });
+            loadEntries();
             service = new ScheduledService<>() {
                 @Override protected Task<Void> createTask() {
                     Task task = new Task() {
@@ -734,6 +752,7 @@ public class Main extends Application {
                     return task;
                 }
             };
+            service.setExecutor(HttpService.INSTANCE.getExecutor());
             service.setPeriod(Duration.millis(60000));
             service.setRestartOnFailure(true);
             service.start();
@@ -754,7 +773,7 @@ public class Main extends Application {
         patternChartButton.setFill(color);
         timeInRangeChartButton.setFill(color);
         stackedButton.setFill(color);
-        drawChart();
+        chartRedraw.request();
         exclamationMark.setFill(color);
 
         prefContentPane.setBackground(new Background(new BackgroundFill(darkMode ? MacosSystemColor.BACKGROUND.dark() : MacosSystemColor.BACKGROUND.aqua(), new CornerRadii(10), Insets.EMPTY)));
@@ -771,39 +790,22 @@ public class Main extends Application {
     }
 
     @Override public void stop() {
-        service.cancel();
+        if (null != service) { service.cancel(); }
+        if (null != entryStore) { entryStore.close(); }
+        if (null != analysisExecutor) { analysisExecutor.shutdownNow(); }
         Platform.exit();
         System.exit(0);
     }
 
     private void isOnline() {
-        try {
-            if (!online.get()) {
-                URL           url        = new URL(Constants.TEST_CONNECTIVITY_URL);
-                URLConnection connection = url.openConnection();
-                connection.connect();
-                online.set(true);
-            }
-        } catch (IOException e) {
-            online.set(false);
-        }
+        if (!online.get()) { online.set(Helper.isReachable(Constants.TEST_CONNECTIVITY_URL)); }
     }
 
 
     // ******************** Methods *******************************************
     private void registerListeners() {
-        chartPane.widthProperty().addListener((o, ov, nv) -> canvas.setWidth(nv.doubleValue() - 10));
-        chartPane.heightProperty().addListener((o, ov, nv) -> canvas.setHeight(nv.doubleValue() - 15));
-
-        allEntries.addListener((ListChangeListener<GlucoEntry>) c -> {
-            while (c.next()) {
-                if (c.wasAdded()) {
-                    updateUI();
-                } else if (c.wasRemoved()) {
-
-                }
-            }
-        });
+        // Every change of the entries leads to a new snapshot that is shared by the main view and all dialogs
+        allEntries.addEventHandler(e -> updateSnapshot());
 
         settingsButton.setOnAction(e -> {
             applySettingsToPreferences();
@@ -845,7 +847,13 @@ public class Main extends Application {
             if (null == ov || null == nv) { return; }
             if (ov.equals(nv)) { nv.setSelected(true); }
 
-            if (nv.equals(ninetyDays)) {
+            if (nv.equals(allDays)) {
+                currentInterval = Interval.ALL;
+            } else if (nv.equals(oneYear)) {
+                currentInterval = Interval.LAST_8760_HOURS;
+            } else if (nv.equals(oneEightyDays)) {
+                currentInterval = Interval.LAST_4320_HOURS;
+            } else if (nv.equals(ninetyDays)) {
                 currentInterval = Interval.LAST_2160_HOURS;
             } else if (nv.equals(thirtyDays)) {
                 currentInterval = Interval.LAST_720_HOURS;
@@ -866,6 +874,7 @@ public class Main extends Application {
             } else if (nv.equals(threeHours)) {
                 currentInterval = Interval.LAST_3_HOURS;
             }
+            loadHistory(currentInterval);
             updateUI();
         });
 
@@ -889,8 +898,8 @@ public class Main extends Application {
             }
         });
 
-        canvas.widthProperty().addListener(o -> drawChart());
-        canvas.heightProperty().addListener(o -> drawChart());
+        canvas.widthProperty().addListener(o -> chartRedraw.request());
+        canvas.heightProperty().addListener(o -> chartRedraw.request());
 
         canvas.setOnMousePressed(e -> {
             canvas.setVisible(false);
@@ -904,44 +913,128 @@ public class Main extends Application {
     }
 
     private void updateEntries() {
-        if (null == nightscoutUrl || nightscoutUrl.isEmpty()) { return; }
-        GlucoEntry           entryFound = null;
-        final String         url        = new StringBuilder().append(nightscoutUrl).append(Constants.URL_API).append(Constants.URL_PARAM_COUNT_1).append(token.isEmpty() ? "" : ("&token=" + token)).toString();
-        HttpResponse<String> response   = Helper.get(url, apiSecret);
-        if (null != response && null != response.body() && !response.body().isEmpty()) {
-            List<GlucoEntry> entry = Helper.getGlucoEntries(response.body());
-            entryFound = entry.isEmpty() ? null : entry.get(0);
-        }
-        if (allEntries.isEmpty()) { return; }
-        if (allEntries.get(0).datelong() == entryFound.datelong()) { return; }
-        allEntries.remove(allEntries.size() - 1);
-        allEntries.add(0, entryFound);
+        if (null == nightscoutUrl || nightscoutUrl.isEmpty() || null == entrySync) { return; }
+        // As long as the history is loaded the sync would fetch the same range again
+        if (!fullSync.isDone()) { return; }
+        List<GlucoEntry> newEntries = entrySync.sync();
+        if (newEntries.isEmpty()) { return; }
+        // Remove the entries that dropped out of the raw horizon and add all new ones in one batch
+        allEntries.applyBatch(newEntries, Instant.now().getEpochSecond() - getRawHorizonSeconds());
+        final EntryStore store = entryStore;
+        analysisExecutor.execute(() -> history.compact(store));
         lastUpdate = ZonedDateTime.now();
     }
 
     private void reloadAllEntries() {
-        if (null != nightscoutUrl && !nightscoutUrl.isEmpty() && ZonedDateTime.now().toEpochSecond() - lastFullUpdate.toEpochSecond() > Constants.SECONDS_PER_MINUTE) {
+        if (null != nightscoutUrl && !nightscoutUrl.isEmpty() && fullSync.isDone() && ZonedDateTime.now().toEpochSecond() - lastFullUpdate.toEpochSecond() > Constants.SECONDS_PER_MINUTE) {
             matrixButton.setOpacity(0.5);
             patternChartButton.setOpacity(0.5);
             stackedButton.setOpacity(0.5);
-            allEntries.clear();
-            Helper.getEntriesFromInterval(INTERVAL, nightscoutUrl + Constants.URL_API, apiSecret, token).thenAccept(l -> {
+            loadEntries();
+            chartRedraw.request();
+        }
+    }
+
+    // Shows the stored history right away and only fetches the entries that are newer than the last stored one
+    private void loadEntries() {
+        if (null == nightscoutUrl || nightscoutUrl.isEmpty()) { return; }
+        if (null == entryStore) { entryStore = new EntryStore(nightscoutUrl); }
+        if (null == entrySync)  { entrySync  = new EntrySync(entryStore, nightscoutUrl + Constants.URL_API, apiSecret, token, INTERVAL); }
+        final long       historyStart = Instant.now().getEpochSecond() - getRawHorizonSeconds();
+        final EntryStore store        = entryStore;
+        final boolean    firstLoad    = allEntries.isEmpty();
+        // Reading the stored entries and compacting the history beyond the raw horizon into rollups both run on the analysis thread, so the first frame doesn't wait for them
+        analysisExecutor.execute(() -> {
+            if (firstLoad) {
+                List<GlucoEntry> storedEntries = store.getEntriesSince(historyStart);
+                if (!storedEntries.isEmpty()) {
+                    allEntries.addAll(storedEntries);
+                    Platform.runLater(() -> {
+                        matrixButton.setOpacity(1.0);
+                        patternChartButton.setOpacity(1.0);
+                        stackedButton.setOpacity(1.0);
+                    });
+                }
+            }
+            history.compact(store);
+        });
+        // The current interval comes first, older history follows in tiers and updates the ui while it streams in
+        fullSync = entrySync.syncAsync(currentInterval, l -> {
+            if (!l.isEmpty()) {
                 allEntries.addAll(l);
-                Platform.runLater(() -> {
-                    matrixButton.setOpacity(1.0);
-                    patternChartButton.setOpacity(1.0);
-                    stackedButton.setOpacity(1.0);
-                });
-                lastFullUpdate = ZonedDateTime.now();
+                lastUpdate = ZonedDateTime.now();
+            }
+            Platform.runLater(() -> {
+                matrixButton.setOpacity(1.0);
+                patternChartButton.setOpacity(1.0);
+                stackedButton.setOpacity(1.0);
             });
-            drawChart();
-        }
+        }).thenRunAsync(() -> {
+            history.compact(store);
+            lastFullUpdate = ZonedDateTime.now();
+        }, analysisExecutor);
+    }
+
+    // Ranges that are longer than the default interval need older history in the store, it's fetched once when such a range is selected
+    private void loadHistory(final Interval interval) {
+        if (null == entrySync || interval.getSeconds() <= INTERVAL.getSeconds()) { return; }
+        final EntrySync  sync    = entrySync;
+        final EntryStore store   = entryStore;
+        // Interval.ALL fetches one year, older history is only shown if it has been stored before
+        final long       seconds = Math.min(interval.getSeconds(), Interval.LAST_8760_HOURS.getSeconds());
+        historySync = CompletableFuture.allOf(fullSync, historySync).handle((v, throwable) -> null).thenCompose(v -> sync.syncHistory(seconds)).thenAcceptAsync(l -> {
+            if (l.isEmpty()) { return; }
+            final long rawHorizonStart = Instant.now().getEpochSecond() - getRawHorizonSeconds();
+            allEntries.addAll(l.stream().filter(entry -> entry.datelong() >= rawHorizonStart).toList());
+            history.compact(store);
+            updateSnapshot();
+        }, analysisExecutor);
+    }
+
+    // Raw entries are kept for at least the default interval, older history is only available as rollups
+    private long getRawHorizonSeconds() {
+        return Math.max(INTERVAL.getSeconds(), PropertyManager.INSTANCE.getLong(Constants.PROPERTIES_RAW_HORIZON_DAYS, 90) * (long) Constants.SECONDS_PER_DAY);
+    }
+
+    // Snapshots are created one after the other, changes that come in while a snapshot is created end up in the next one
+    private void updateSnapshot() {
+        if (analysisPending.getAndSet(true)) { return; }
+        analysisExecutor.execute(() -> {
+            analysisPending.set(false);
+            snapshot.set(AnalysisSnapshot.create(allEntries, aggregates, history, patternSketches, getRawHorizonSeconds()));
+            updateUI();
+        });
+    }
+
+    // Selects the rollup tier and reduces the entries to the envelope of the main chart on the analysis thread, the chart is redrawn when it's ready
+    private void updateChartData(final Interval interval, final GlucoSeries.View rawEntries, final long intervalSeconds, final double availableWidth, final long minDatelong) {
+        if (chartDataPending.getAndSet(true)) { return; }
+        analysisExecutor.execute(() -> {
+            try {
+                // Long intervals are drawn from the coarsest rollup tier that still has one value per pixel
+                TieredHistory.Resolution resolution   = TieredHistory.selectResolution(intervalSeconds, availableWidth);
+                GlucoSeries.View         chartEntries = TieredHistory.Resolution.RAW == resolution ? rawEntries : history.getView(resolution, minDatelong + 1);
+                if (chartEntries.isEmpty()) { chartEntries = rawEntries; }
+                // At most two points (min and max) per pixel column, so the number of line segments doesn't depend on the length of the history
+                chartData = new ChartData(interval, (int) availableWidth, minDatelong, rawEntries.getLastTimestamp(), downsampler.get(interval, chartEntries, intervalSeconds, availableWidth));
+            } finally {
+                chartDataPending.set(false);
+            }
+            chartRedraw.request();
+        });
+    }
+
+    // Interval.ALL shows the whole stored history, but at least the default interval
+    private long getChartSeconds(final Interval interval) {
+        if (Interval.ALL != interval) { return interval.getSeconds(); }
+        final long firstTimestamp = history.getFirstTimestamp();
+        return 0 == firstTimestamp ? INTERVAL.getSeconds() : Math.max(INTERVAL.getSeconds(), Instant.now().getEpochSecond() - firstTimestamp);
     }
 
     private boolean predict() {
         if (null == allEntries || allEntries.isEmpty()) { return false; }
-        GlucoEntry       currentEntry = allEntries.get(0);
-        List<GlucoEntry> last3Entries = allEntries.stream().limit(3).collect(Collectors.toList());
+        GlucoSeries.View last3Entries = allEntries.getView().last(3);
+        GlucoEntry       currentEntry = last3Entries.get(last3Entries.size() - 1);
 
         // Soon too low
         boolean soonTooLow = last3Entries.stream().filter(entry -> Trend.DOUBLE_DOWN == entry.trend() || Trend.SINGLE_DOWN == entry.trend()).count() == 3;
@@ -971,7 +1064,7 @@ public class Main extends Application {
         return false;
     }
 
-    private void notifyIfNeeded() {
+    private void notifyIfNeeded(final GlucoEntry currentEntry) {
         Trend         trend                                  = currentEntry.trend();
         ZonedDateTime now                                    = ZonedDateTime.now();
         double        value                                  = currentEntry.sgv();
@@ -1181,12 +1274,22 @@ public class Main extends Application {
 
         PropertyManager.INSTANCE.storeProperties();
 
+        if (!nightscoutUrlTextField.getText().equals(nightscoutUrl) && null != entryStore) {
+            entryStore.close();
+            entryStore = null;
+            history.clear();
+            downsampler.clear();
+        }
+        if (!nightscoutUrlTextField.getText().equals(nightscoutUrl) || !apiSecretPasswordField.getText().equals(apiSecret) || !nightscoutTokenPasswordField.getText().equals(token)) {
+            entrySync = null;
+        }
         nightscoutUrl = nightscoutUrlTextField.getText();
+        apiSecret     = apiSecretPasswordField.getText();
+        token         = nightscoutTokenPasswordField.getText();
         if (null != nightscoutUrl && !nightscoutUrl.isEmpty() && allEntries.isEmpty()) {
-            updateEntries();
             if (null != service) { service.cancel(); }
 
-            Helper.getEntriesFromInterval(INTERVAL, nightscoutUrl + Constants.URL_API, apiSecret, token).thenAccept(l -> allEntries.addAll(l));
+            loadEntries();
 
             service = new ScheduledService<>() {
                 @Override protected Task<Void> createTask() {
@@ -1199,19 +1302,18 @@ public class Main extends Application {
                     return task;
                 }
             };
+            service.setExecutor(HttpService.INSTANCE.getExecutor());
             service.setPeriod(Duration.millis(60000));
             service.setRestartOnFailure(true);
             service.start();
         }
 
-        apiSecret = apiSecretPasswordField.getText();
-        token     = nightscoutTokenPasswordField.getText();
-
         updateSettings();
         updateUI();
     }
 
     private void updateSettings() {
+        ThresholdProfile.reload();
         darkMode            = PropertyManager.INSTANCE.getBoolean(Constants.PROPERTIES_DARK_MODE, true);
         currentUnit         = PropertyManager.INSTANCE.getBoolean(Constants.PROPERTIES_UNIT_MG) ? MILLIGRAM_PER_DECILITER : MILLIMOL_PER_LITER;
         deltaChartVisible   = PropertyManager.INSTANCE.getBoolean(Constants.PROPERTIES_SHOW_DELTA_CHART);
@@ -1223,343 +1325,308 @@ public class Main extends Application {
         minNormalFactor     = 1.0 - minNormal     / Constants.DEFAULT_GLUCO_RANGE;
         maxNormalFactor     = 1.0 - maxNormal     / Constants.DEFAULT_GLUCO_RANGE;
         maxAcceptableFactor = 1.0 - maxAcceptable / Constants.DEFAULT_GLUCO_RANGE;
+        if (null != aggregates) {
+            aggregates.loadThresholds();
+            updateSnapshot();
+        }
     }
 
+    // Everything is computed into locals first and published on the fx application thread in one step, so drawChart() never sees half updated values
     private void updateUI() {
-        if (allEntries.isEmpty()) { return; }
-        Collections.sort(allEntries, Comparator.comparingLong(GlucoEntry::datelong).reversed());
-        long limit = OffsetDateTime.now().toEpochSecond() - currentInterval.getSeconds();
-        entries = allEntries.stream().filter(entry -> entry.datelong() > limit).collect(Collectors.toList());
+        AnalysisSnapshot analysis = snapshot.get();
+        if (analysis.isEmpty()) { return; }
+        final Interval                     interval        = currentInterval;
+        final UnitDefinition               selectedUnit    = currentUnit;
+        final GlucoSeries.View             view            = analysis.getView();
+        final IntervalAggregates.Aggregate aggregate       = analysis.get(interval).aggregate();
+        final GlucoSeries.View             filteredEntries = analysis.get(interval).entries();
 
         // Use last entry if filtered list is empty
-        if (entries.isEmpty()) { entries.add(allEntries.get(0)); }
+        final GlucoSeries.View intervalEntries = filteredEntries.isEmpty() ? view.last(1) : filteredEntries;
 
-        currentEntry = entries.get(0);
-        currentColor = null == currentEntry ? Constants.GRAY : Helper.getColorForValue(currentUnit, UnitDefinition.MILLIGRAM_PER_DECILITER == currentUnit ? currentEntry.sgv() : Helper.mgPerDeciliterToMmolPerLiter(currentEntry.sgv()));
+        final GlucoEntry latestEntry = intervalEntries.get(intervalEntries.size() - 1);
+        final Color      color       = null == latestEntry ? Constants.GRAY : ThresholdProfile.getCurrent().getColor(latestEntry.sgv());
 
-        Trend currentTrend     = currentEntry.trend();
-        Trend currentDirection = Trend.getFromText(currentEntry.direction());
+        Trend currentTrend     = latestEntry.trend();
+        Trend currentDirection = Trend.getFromText(latestEntry.direction());
         Trend trend            = (Trend.NONE != currentDirection && currentTrend != currentDirection) ? currentDirection : currentTrend;
 
-        deltas.clear();
-        if (allEntries.size() > 13) {
+        final List<Double> newDeltas = new ArrayList<>();
+        double             min       = 0;
+        double             max       = 0;
+        if (view.size() > 13) {
+            // view is sorted ascending, so n - i is the i-th newest entry
+            int n = view.size() - 1;
             for (int i = 12; i > 0; i--) {
                 double delta;
-                if (MILLIGRAM_PER_DECILITER == currentUnit) {
-                    delta = allEntries.get(i - 1).sgv() - allEntries.get(i).sgv();
-                    deltas.add(delta);
+                if (MILLIGRAM_PER_DECILITER == selectedUnit) {
+                    delta = view.getSgv(n - i + 1) - view.getSgv(n - i);
+                    newDeltas.add(delta);
                 } else {
-                    delta = Helper.mgPerDeciliterToMmolPerLiter(allEntries.get(i - 1).sgv()) - Helper.mgPerDeciliterToMmolPerLiter(allEntries.get(i).sgv());
-                    deltas.add(delta);
+                    delta = Helper.mgPerDeciliterToMmolPerLiter(view.getSgv(n - i + 1)) - Helper.mgPerDeciliterToMmolPerLiter(view.getSgv(n - i));
+                    newDeltas.add(delta);
                 }
             }
-            deltaMin = deltas.stream().min(Comparator.naturalOrder()).get();
-            deltaMax = deltas.stream().max(Comparator.naturalOrder()).get();
-            if (MILLIMOL_PER_LITER == currentUnit) {
-                deltaMin = Helper.mgPerDeciliterToMmolPerLiter(deltaMin);
-                deltaMax = Helper.mgPerDeciliterToMmolPerLiter(deltaMax);
+            min = newDeltas.stream().min(Comparator.naturalOrder()).get();
+            max = newDeltas.stream().max(Comparator.naturalOrder()).get();
+            if (MILLIMOL_PER_LITER == selectedUnit) {
+                min = Helper.mgPerDeciliterToMmolPerLiter(min);
+                max = Helper.mgPerDeciliterToMmolPerLiter(max);
             }
         }
-        if (MILLIGRAM_PER_DECILITER == currentUnit) {
-            slowlyRising  = deltas.stream().limit(4).filter(delta -> delta > 0).filter(delta -> delta < 3).count() == 4;
-            slowlyFalling = deltas.stream().limit(4).filter(delta -> delta < 0).filter(delta -> delta > -3).count() == 4;
+        final boolean rising;
+        final boolean falling;
+        if (MILLIGRAM_PER_DECILITER == selectedUnit) {
+            rising  = newDeltas.stream().limit(4).filter(delta -> delta > 0).filter(delta -> delta < 3).count() == 4;
+            falling = newDeltas.stream().limit(4).filter(delta -> delta < 0).filter(delta -> delta > -3).count() == 4;
         } else {
-            slowlyRising  = deltas.stream().limit(4).filter(delta -> delta > 0).filter(delta -> delta < Helper.mgPerDeciliterToMmolPerLiter(3)).count() == 4;
-            slowlyFalling = deltas.stream().limit(4).filter(delta -> delta < 0).filter(delta -> delta > Helper.mgPerDeciliterToMmolPerLiter(-3)).count() == 4;
+            rising  = newDeltas.stream().limit(4).filter(delta -> delta > 0).filter(delta -> delta < Helper.mgPerDeciliterToMmolPerLiter(3)).count() == 4;
+            falling = newDeltas.stream().limit(4).filter(delta -> delta < 0).filter(delta -> delta > Helper.mgPerDeciliterToMmolPerLiter(-3)).count() == 4;
         }
 
-        String format           = MILLIGRAM_PER_DECILITER == currentUnit ? "%.0f" : "%.1f";
-        double currentValue     = UnitDefinition.MILLIGRAM_PER_DECILITER == currentUnit ? currentEntry.sgv() : Helper.mgPerDeciliterToMmolPerLiter(currentEntry.sgv());
+        String format           = MILLIGRAM_PER_DECILITER == selectedUnit ? "%.0f" : "%.1f";
+        double currentValue     = UnitDefinition.MILLIGRAM_PER_DECILITER == selectedUnit ? latestEntry.sgv() : Helper.mgPerDeciliterToMmolPerLiter(latestEntry.sgv());
         String currentValueText = new StringBuilder().append(String.format(Locale.US, format, currentValue)).append(" ").append(trend.getSymbol()).toString();
 
-        Instant lastTimestamp = Instant.ofEpochSecond(currentEntry.datelong());
-        outdated = (OffsetDateTime.now().toEpochSecond() - lastTimestamp.getEpochSecond() > Constants.TIMEOUT_IN_SECONDS);
+        Instant lastTimestamp = Instant.ofEpochSecond(latestEntry.datelong());
+        final boolean isOutdated = (OffsetDateTime.now().toEpochSecond() - lastTimestamp.getEpochSecond() > Constants.TIMEOUT_IN_SECONDS);
         LocalDateTime dateTime = LocalDateTime.ofInstant(lastTimestamp, ZoneId.systemDefault());
-        if (MILLIGRAM_PER_DECILITER == currentUnit) {
-            avg = entries.stream().map(entry -> entry.sgv()).collect(Collectors.summingDouble(Double::doubleValue)) / entries.size();
-        } else {
-            avg = entries.stream().map(entry -> Helper.mgPerDeciliterToMmolPerLiter(entry.sgv())).collect(Collectors.summingDouble(Double::doubleValue)) / entries.size();
-        }
+        double average = aggregate.count() > 0 ? aggregate.average() : intervalEntries.average();
+        final double rangeAverage = MILLIGRAM_PER_DECILITER == selectedUnit ? average : Helper.mgPerDeciliterToMmolPerLiter(average);
 
         // Set value specific tray icon
         //if (null != trayIcon && OperatingSystem.MACOS == operatingSystem) {
         if (null != trayIcon) {
             SwingUtilities.invokeLater(() -> Platform.runLater(() -> {
-                String text = currentValueText + (outdated ? "\u26A0" : "");
+                String text = currentValueText + (isOutdated ? "\u26A0" : "");
                 trayIcon.setGraphic(Helper.createTextTrayIcon(operatingSystem, text, darkMode ? Color.WHITE : Color.BLACK));
                 trayIcon.setTrayIconTooltip(text);
             }));
         }
+        final List<Double> publishedDeltas = List.copyOf(newDeltas);
+        final double       publishedMin    = min;
+        final double       publishedMax    = max;
         Platform.runLater(() -> {
-            unit.setText(currentUnit.UNIT.getUnitShort() + " (");
-            if (deltas.isEmpty()) {
+            entries       = intervalEntries;
+            currentEntry  = latestEntry;
+            currentColor  = color;
+            deltas        = publishedDeltas;
+            deltaMin      = publishedMin;
+            deltaMax      = publishedMax;
+            slowlyRising  = rising;
+            slowlyFalling = falling;
+            avg           = rangeAverage;
+            outdated      = isOutdated;
+
+            unit.setText(selectedUnit.UNIT.getUnitShort() + " (");
+            if (publishedDeltas.isEmpty()) {
                 delta4.setText("-, ");
                 delta3.setText("-, ");
                 delta2.setText("-, ");
                 delta1.setText("-, ");
                 delta0.setText("-)");
             } else {
-                delta4.setText(String.format(Locale.US, "%+.1f, ", deltas.get(7)));
-                delta3.setText(String.format(Locale.US, "%+.1f, ", deltas.get(8)));
-                delta2.setText(String.format(Locale.US, "%+.1f, ", deltas.get(9)));
-                delta1.setText(String.format(Locale.US, "%+.1f, ", deltas.get(10)));
-                delta0.setText(String.format(Locale.US, "%+.1f)", deltas.get(11)));
+                delta4.setText(String.format(Locale.US, "%+.1f, ", publishedDeltas.get(7)));
+                delta3.setText(String.format(Locale.US, "%+.1f, ", publishedDeltas.get(8)));
+                delta2.setText(String.format(Locale.US, "%+.1f, ", publishedDeltas.get(9)));
+                delta1.setText(String.format(Locale.US, "%+.1f, ", publishedDeltas.get(10)));
+                delta0.setText(String.format(Locale.US, "%+.1f)", publishedDeltas.get(11)));
             }
 
-            mainPane.setBackground(new Background(new BackgroundFill(currentColor, CornerRadii.EMPTY, Insets.EMPTY)));
+            mainPane.setBackground(new Background(new BackgroundFill(color, CornerRadii.EMPTY, Insets.EMPTY)));
             valueLabel.setText(currentValueText);
 
-            switch(currentInterval) {
-                case LAST_3_HOURS, LAST_6_HOURS, LAST_12_HOURS, LAST_24_HOURS, LAST_48_HOURS, LAST_72_HOURS -> hba1cLabel.setText(String.format(Locale.US, "HbA1c %.1f%%", Helper.calcHbA1c(allEntries.stream().limit(Interval.LAST_168_HOURS.getNoOfEntries()).collect(
-                Collectors.toList()))) + " (" + Interval.LAST_168_HOURS.getUiString() + ")");
-                default -> hba1cLabel.setText(String.format(Locale.US, "HbA1c %.1f%%", Helper.calcHbA1c(entries)) + " (" + currentInterval.getUiString() + ")");
+            switch(interval) {
+                case LAST_3_HOURS, LAST_6_HOURS, LAST_12_HOURS, LAST_24_HOURS, LAST_48_HOURS, LAST_72_HOURS -> hba1cLabel.setText(String.format(Locale.US, "HbA1c %.1f%%", analysis.get(Interval.LAST_168_HOURS).aggregate().hba1c()) + " (" + Interval.LAST_168_HOURS.getUiString() + ")");
+                default -> hba1cLabel.setText(String.format(Locale.US, "HbA1c %.1f%%", aggregate.hba1c()) + " (" + interval.getUiString() + ")");
             }
 
             //timestampLabel.setText(Constants.DTF.format(dateTime) + (outdated ? " \u26A0" : ""));
-            timestampLabel.setText(dtf.format(dateTime) + (outdated ? " \u26A0" : ""));
-            exclamationMark.setVisible(outdated);
-            rangeAverageLabel.setText(currentInterval.getUiString() + " (\u2300" + String.format(Locale.US, format, avg) + ")");
+            timestampLabel.setText(dtf.format(dateTime) + (isOutdated ? " \u26A0" : ""));
+            exclamationMark.setVisible(isOutdated);
+            rangeAverageLabel.setText(interval.getUiString() + " (\u2300" + String.format(Locale.US, format, rangeAverage) + ")");
 
-            drawChart();
+            chartRedraw.request();
         });
 
         predict();
 
-        notifyIfNeeded();
+        notifyIfNeeded(latestEntry);
     }
 
     private void drawChart() {
         if (entries.isEmpty()) { return; }
-        Collections.sort(entries, Comparator.comparingLong(GlucoEntry::datelong));
 
-        poincarePlot.setValues(currentUnit, entries.stream().map(entry -> entry.sgv()).toList());
+        poincarePlot.setValues(currentUnit, entries.toSgvList());
 
-        double  width           = canvas.getWidth();
-        double  height          = canvas.getHeight();
+        double  width           = canvas.getCanvasWidth();
+        double  height          = canvas.getCanvasHeight();
         double  availableWidth  = (width - GRAPH_INSETS.getLeft() - GRAPH_INSETS.getRight());
         double  availableHeight = (height - GRAPH_INSETS.getTop() - GRAPH_INSETS.getBottom());
-
-        ctx.clearRect(0, 0, width, height);
-        ctx.setFill(darkMode ? Constants.DARK_BACKGROUND : Color.rgb(255, 255, 255));
-        ctx.fillRect(0, 0, width, height);
-        ctx.setFont(ticklabelFont);
-        ctx.setFill(Constants.BRIGHT_TEXT);
-        ctx.setStroke(darkMode ? Color.rgb(81, 80, 78) : Color.rgb(184, 183, 183));
-        ctx.setLineDashes(3, 4);
-        ctx.setLineWidth(1);
-        List<String> yAxisLabels = MILLIGRAM_PER_DECILITER == currentUnit ? Constants.yAxisLabelsMgPerDeciliter : Constants.yAxisLabelsMmolPerLiter;
+        if (availableWidth <= 0 || availableHeight <= 0) { return; }
 
         // Draw chart
-        long           chartStartEpoch = OffsetDateTime.now().minusSeconds(currentInterval.getSeconds()).toEpochSecond();
-        OffsetDateTime chartStartDate  = OffsetDateTime.ofInstant(Instant.ofEpochSecond(chartStartEpoch), ZoneId.systemDefault());
-
-        // Get min entry if within range
-        GlucoEntry minEntry;
-        if (entries.get(0).datelong() < chartStartEpoch) {
-            GlucoEntry firstEntry = entries.get(0);
-            minEntry = new GlucoEntry(firstEntry.id(), firstEntry.sgv(), chartStartEpoch, chartStartDate, firstEntry.dateString(), firstEntry.trend(), firstEntry.direction(), firstEntry.device(), firstEntry.type(), firstEntry.utcOffset(),
-                                      firstEntry.noise(), firstEntry.filtered(), firstEntry.unfiltered(), firstEntry.rssi(), firstEntry.delta(), firstEntry.sysTime());
-        } else if (entries.get(0).datelong() > chartStartEpoch) {
-            GlucoEntry firstEntry = entries.get(0);
-            minEntry = new GlucoEntry(firstEntry.id(), firstEntry.sgv(), chartStartEpoch, chartStartDate, firstEntry.dateString(), firstEntry.trend(), firstEntry.direction(), firstEntry.device(), firstEntry.type(), firstEntry.utcOffset(),
-                                      firstEntry.noise(), firstEntry.filtered(), firstEntry.unfiltered(), firstEntry.rssi(), firstEntry.delta(), firstEntry.sysTime());
-        } else {
-            minEntry = entries.get(0);
-        }
-
-        double deltaTime = OffsetDateTime.now().toEpochSecond() - minEntry.datelong();
-        if (deltaTime > currentInterval.getSeconds()) {
-            deltaTime = OffsetDateTime.now().toEpochSecond() - OffsetDateTime.now().minusSeconds(currentInterval.getSeconds()).toEpochSecond();
-        } else if (deltaTime < currentInterval.getSeconds()) {
-            deltaTime = OffsetDateTime.now().toEpochSecond() - OffsetDateTime.now().minusSeconds(currentInterval.getSeconds()).toEpochSecond();
-        }
-
-        ZonedDateTime minDate       = Helper.getZonedDateTimeFromEpochSeconds(minEntry.datelong());
-        double        stepX         = availableWidth / deltaTime;
-        double        stepY         = availableHeight / (Constants.DEFAULT_GLUCO_RANGE);
-        int           hour          = minDate.getHour();
-        ZonedDateTime adjMinDate    = (hour == 23 && currentInterval != Interval.LAST_12_HOURS) ? minDate.plusSeconds(Interval.LAST_24_HOURS.getSeconds()) : minDate;
-        ZonedDateTime firstFullHour = (hour == 23 && currentInterval != Interval.LAST_12_HOURS) ? ZonedDateTime.of(adjMinDate.plusDays(1).toLocalDate(), LocalTime.MIDNIGHT, ZoneId.systemDefault()) : adjMinDate;
-        long          startX        = firstFullHour.toEpochSecond() - minEntry.datelong();
-        int           lastHour      = -1;
-        double        oneHourStep   = Constants.SECONDS_PER_HOUR * stepX;
-        long          hourCounter   = 0;
-
-        // Collect nights
-        ZonedDateTime                             startTime     = ZonedDateTime.ofInstant(Instant.ofEpochSecond(startX + minEntry.datelong()), ZoneId.systemDefault());
-        ZonedDateTime                             endTime       = ZonedDateTime.ofInstant(Instant.ofEpochSecond(startX + minEntry.datelong() + currentInterval.getSeconds()), ZoneId.systemDefault());
-        int                                       startHour     = startTime.getHour();
-        int                                       endHour       = endTime.getHour();
-        boolean                                   startsAtNight = false;
-        List<eu.hansolo.toolboxfx.geom.Rectangle> nights        = new ArrayList<>();
-
-        // Draw x-axis label and vertical lines only if interval is smaller than 14 days
-        if (currentInterval.getHours() < Interval.LAST_720_HOURS.getHours()) {
-
-            // Chart starts at night
-            if (Constants.NIGHT_HOURS.contains(startHour)) {
-                double widthToNextFullHour = java.time.Duration.between(startTime, startTime.plusHours(1).truncatedTo(ChronoUnit.HOURS)).toSeconds() * stepX;
-                double w                   = widthToNextFullHour + (10 - Constants.NIGHT_HOURS.indexOf(startHour) - 1) * oneHourStep;
-                nights.add(new eu.hansolo.toolboxfx.geom.Rectangle(GRAPH_INSETS.getLeft(), GRAPH_INSETS.getTop(), w, availableHeight));
-            }
-
-            // Chart ends at night
-            if (Constants.NIGHT_HOURS.contains(endHour)) {
-                int           dayOffset  = startTime.getDayOfMonth() == endTime.getDayOfMonth() ? 0 : 1;
-                ZonedDateTime nightStart = ZonedDateTime.of(endTime.toLocalDate().minusDays(dayOffset), LocalTime.of(Constants.NIGHT_START, 0), ZoneId.systemDefault());
-                double        w          = availableWidth - (endTime.toEpochSecond() - nightStart.toEpochSecond()) * stepX;
-                nights.add(new eu.hansolo.toolboxfx.geom.Rectangle(GRAPH_INSETS.getLeft() + (nightStart.toEpochSecond() - startX) * stepX, GRAPH_INSETS.getTop(), w, availableHeight));
-            }
-
-            // Full nights
-            boolean nightStart = false;
-            double  nightX     = -1;
-            for (long i = startX ; i <= deltaTime ; i++) {
-                int    h = ZonedDateTime.ofInstant(Instant.ofEpochSecond(i + minEntry.datelong()), ZoneId.systemDefault()).getHour();
-                double x = GRAPH_INSETS.getLeft() + i * stepX;
-                if (h != lastHour) {
-                    if (!startsAtNight && Constants.NIGHT_START == h && !nightStart) {
-                        nightStart = true;
-                        nightX     = x;
-                    }
-
-                    if (Constants.NIGHT_END == h && nightStart) {
-                        nightStart = false;
-
-                        if (Interval.LAST_12_HOURS == currentInterval) {
-                            if (nights.isEmpty()) {
-                                nights.add(new eu.hansolo.toolboxfx.geom.Rectangle(nightX, GRAPH_INSETS.getTop(), 10 * oneHourStep, availableHeight));
-                            }
-                        } else {
-                            nights.add(new eu.hansolo.toolboxfx.geom.Rectangle(nightX, GRAPH_INSETS.getTop(), 10 * oneHourStep, availableHeight));
-                        }
-                    }
-                }
-                lastHour = h;
+        long intervalSeconds = getChartSeconds(currentInterval);
+        long secondsPerPixel = Math.max(1, (long) (intervalSeconds / availableWidth));
+
+        // The chart start moves in steps of whole pixels, so the layers only have to be drawn again if something moved on screen
+        long minDatelong = Math.floorDiv(OffsetDateTime.now().toEpochSecond() - intervalSeconds, secondsPerPixel) * secondsPerPixel;
+
+        double stepX         = availableWidth / intervalSeconds;
+        double stepY         = availableHeight / (Constants.DEFAULT_GLUCO_RANGE);
+        long   chartEndEpoch = minDatelong + intervalSeconds;
+
+        double minAcceptableValue = PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_ACCEPTABLE);
+        double maxAcceptableValue = PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_ACCEPTABLE);
+        double minNormalValue     = PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_NORMAL);
+        double maxNormalValue     = PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_NORMAL);
+
+        // Grid, y-axis labels and the acceptable and normal ranges only change with the unit, the mode, the thresholds and the size
+        if (canvas.prepare(Layer.GRID, List.of(currentUnit, darkMode, minAcceptableValue, maxAcceptableValue, minNormalValue, maxNormalValue))) {
+            GraphicsContext ctx         = canvas.getGraphicsContext(Layer.GRID);
+            List<String>    yAxisLabels = MILLIGRAM_PER_DECILITER == currentUnit ? Constants.yAxisLabelsMgPerDeciliter : Constants.yAxisLabelsMmolPerLiter;
+            ctx.setFill(darkMode ? Constants.DARK_BACKGROUND : Color.rgb(255, 255, 255));
+            ctx.fillRect(0, 0, width, height);
+            ctx.setFont(ticklabelFont);
+            ctx.setFill(darkMode ? Constants.BRIGHT_TEXT : Constants.DARK_TEXT);
+            ctx.setStroke(darkMode ? Color.rgb(81, 80, 78) : Color.rgb(184, 183, 183));
+            ctx.setLineDashes(3, 4);
+            ctx.setLineWidth(1);
+
+            // Draw horizontal grid lines
+            ctx.setTextAlign(TextAlignment.RIGHT);
+            double yLabelStep = availableHeight / yAxisLabels.size();
+            for (int i = 0 ; i < yAxisLabels.size() ; i++) {
+                double y = height - GRAPH_INSETS.getBottom() - i * yLabelStep - yLabelStep;
+                ctx.strokeLine(GRAPH_INSETS.getLeft(), y, width - GRAPH_INSETS.getRight(), y);
+                ctx.fillText(yAxisLabels.get(i), GRAPH_INSETS.getLeft() * 2.5, y + 4);
+                ctx.fillText(yAxisLabels.get(i), width - GRAPH_INSETS.getRight(), y + 4);
             }
 
-            if (nightStart) {
-                nights.add(new eu.hansolo.toolboxfx.geom.Rectangle(nightX, GRAPH_INSETS.getTop(), availableWidth - nightX + GRAPH_INSETS.getRight(), availableHeight));
-            }
+            ctx.setLineWidth(darkMode ? 1.0 : 1.5);
+            ctx.setLineDashes();
+
+            // Draw acceptable limits
+            double minAcceptable = (height - GRAPH_INSETS.getBottom()) - minAcceptableValue * stepY;
+            double maxAcceptable = (height - GRAPH_INSETS.getBottom()) - maxAcceptableValue * stepY;
+            ctx.setStroke(Constants.YELLOW);
+            ctx.strokeLine(3 * GRAPH_INSETS.getLeft(), minAcceptable, width - GRAPH_INSETS.getRight(), minAcceptable);
+            ctx.strokeLine(3 * GRAPH_INSETS.getLeft(), maxAcceptable, width - GRAPH_INSETS.getRight(), maxAcceptable);
+
+            // Draw normal area
+            double minNormal    = (height - GRAPH_INSETS.getBottom()) - minNormalValue * stepY;
+            double maxNormal    = (height - GRAPH_INSETS.getBottom()) - maxNormalValue * stepY;
+            double heightNormal = (maxNormalValue - minNormalValue) * stepY;
+            ctx.setFill(HelperFX.getColorWithOpacity(Constants.GREEN, 0.2));
+            ctx.setStroke(Constants.GREEN);
+            ctx.fillRect(3 * GRAPH_INSETS.getLeft(), maxNormal, availableWidth - 2 * GRAPH_INSETS.getRight(), heightNormal);
+            ctx.strokeLine( 3 * GRAPH_INSETS.getLeft(), minNormal, width - GRAPH_INSETS.getRight(), minNormal);
+            ctx.strokeLine(3 * GRAPH_INSETS.getLeft(), maxNormal, width - GRAPH_INSETS.getRight(), maxNormal);
+        }
 
-            // Draw nights
+        // Nights, vertical lines and x-axis labels only change with the interval, the mode, the size and when the chart moved by a pixel
+        if (canvas.prepare(Layer.NIGHTS, List.of(currentInterval, darkMode, minDatelong))) {
+            GraphicsContext ctx = canvas.getGraphicsContext(Layer.NIGHTS);
+            // Draw x-axis label and vertical lines only if interval is smaller than 14 days
             if (currentInterval.getHours() < Interval.LAST_720_HOURS.getHours()) {
-                ctx.save();
+                // Draw nights
                 ctx.setFill(darkMode ? Color.rgb(255, 255, 255, 0.1) : Color.rgb(0, 0, 0, 0.1));
-                nights.forEach(night -> ctx.fillRect(night.getX(), night.getY(), night.width, night.getHeight()));
-                ctx.restore();
-            }
-
-            // Draw vertical lines
-            if (currentInterval.getHours() < Interval.LAST_336_HOURS.getHours()) {
-                ctx.setFill(darkMode ? Constants.BRIGHT_TEXT : Constants.DARK_TEXT);
-                ctx.setTextAlign(TextAlignment.CENTER);
-                long interval;
-                switch (currentInterval) {
-                    case LAST_720_HOURS, LAST_168_HOURS, LAST_72_HOURS -> interval = Interval.LAST_6_HOURS.getHours();
-                    case LAST_48_HOURS -> interval = Interval.LAST_3_HOURS.getHours();
-                    default -> interval = 1;
+                for (TimeAxis.Band night : timeAxis.getNights(minDatelong, chartEndEpoch)) {
+                    ctx.fillRect(GRAPH_INSETS.getLeft() + (night.start() - minDatelong) * stepX, GRAPH_INSETS.getTop(), night.length() * stepX, availableHeight);
                 }
-                hourCounter = 0;
-                for (long i = startX; i <= deltaTime; i++) {
-                    int    h = ZonedDateTime.ofInstant(Instant.ofEpochSecond(i + minEntry.datelong()), ZoneId.systemDefault()).getHour();
-                    double x = GRAPH_INSETS.getLeft() + i * stepX;
-                    if (h != lastHour && lastHour != -1 && i != startX) {
-                        if (hourCounter % interval == 0) {
-                            ctx.strokeLine(x, GRAPH_INSETS.getTop(), x, height - GRAPH_INSETS.getBottom());
-                            switch (currentInterval) {
-                                case LAST_3_HOURS, LAST_6_HOURS -> ctx.fillText(h + ":00", x, height - GRAPH_INSETS.getBottom() * 0.5);
-                                default -> ctx.fillText(Integer.toString(h), x, height - GRAPH_INSETS.getBottom() * 0.5);
-                            }
+
+                // Draw vertical lines
+                if (currentInterval.getHours() < Interval.LAST_336_HOURS.getHours()) {
+                    ctx.setFont(ticklabelFont);
+                    ctx.setFill(darkMode ? Constants.BRIGHT_TEXT : Constants.DARK_TEXT);
+                    ctx.setStroke(darkMode ? Color.rgb(81, 80, 78) : Color.rgb(184, 183, 183));
+                    ctx.setLineDashes(3, 4);
+                    ctx.setLineWidth(1);
+                    ctx.setTextAlign(TextAlignment.CENTER);
+                    int interval;
+                    switch (currentInterval) {
+                        case LAST_720_HOURS, LAST_168_HOURS, LAST_72_HOURS -> interval = Interval.LAST_6_HOURS.getHours();
+                        case LAST_48_HOURS -> interval = Interval.LAST_3_HOURS.getHours();
+                        default -> interval = 1;
+                    }
+                    for (TimeAxis.Tick tick : timeAxis.getHourTicks(minDatelong, chartEndEpoch, interval)) {
+                        double x = GRAPH_INSETS.getLeft() + (tick.epochSecond() - minDatelong) * stepX;
+                        ctx.strokeLine(x, GRAPH_INSETS.getTop(), x, height - GRAPH_INSETS.getBottom());
+                        switch (currentInterval) {
+                            case LAST_3_HOURS, LAST_6_HOURS -> ctx.fillText(tick.hour() + ":00", x, height - GRAPH_INSETS.getBottom() * 0.5);
+                            default -> ctx.fillText(Integer.toString(tick.hour()), x, height - GRAPH_INSETS.getBottom() * 0.5);
                         }
-                        hourCounter++;
                     }
-                    lastHour = h;
                 }
             }
         }
 
-        // Draw horizontal grid lines
-        ctx.setTextAlign(TextAlignment.RIGHT);
-        double yLabelStep = availableHeight / yAxisLabels.size();
-        for (int i = 0 ; i < yAxisLabels.size() ; i++) {
-            double y = height - GRAPH_INSETS.getBottom() - i * yLabelStep - yLabelStep;
-            ctx.strokeLine(GRAPH_INSETS.getLeft(), y, width - GRAPH_INSETS.getRight(), y);
-            ctx.fillText(yAxisLabels.get(i), GRAPH_INSETS.getLeft() * 2.5, y + 4);
-            ctx.fillText(yAxisLabels.get(i), width - GRAPH_INSETS.getRight(), y + 4);
+        // The points of the line chart are prepared in the background, until they are ready the last ones of the same interval are drawn
+        ChartData data = chartData;
+        if (null == data || data.interval() != currentInterval || data.pixels() != (int) availableWidth || data.minDatelong() != minDatelong || data.lastTimestamp() != entries.getLastTimestamp()) {
+            updateChartData(currentInterval, entries, intervalSeconds, availableWidth, minDatelong);
         }
-
-        ctx.setLineWidth(darkMode ? 1.0 : 1.5);
-        ctx.setLineDashes();
-
-        // Draw acceptable limits
-        double minAcceptable = (height - GRAPH_INSETS.getBottom()) - PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_ACCEPTABLE) * stepY;
-        double maxAcceptable = (height - GRAPH_INSETS.getBottom()) - PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_ACCEPTABLE) * stepY;
-        ctx.setStroke(Constants.YELLOW);
-        ctx.strokeLine(3 * GRAPH_INSETS.getLeft(), minAcceptable, width - GRAPH_INSETS.getRight(), minAcceptable);
-        ctx.strokeLine(3 * GRAPH_INSETS.getLeft(), maxAcceptable, width - GRAPH_INSETS.getRight(), maxAcceptable);
-
-        // Draw normal area
-        double minNormal    = (height - GRAPH_INSETS.getBottom()) - PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_NORMAL) * stepY;
-        double maxNormal    = (height - GRAPH_INSETS.getBottom()) - PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_NORMAL) * stepY;
-        double heightNormal = (PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_NORMAL) - PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_NORMAL)) * stepY;
-        ctx.setFill(HelperFX.getColorWithOpacity(Constants.GREEN, 0.2));
-        ctx.setStroke(Constants.GREEN);
-        ctx.fillRect(3 * GRAPH_INSETS.getLeft(), maxNormal, availableWidth - 2 * GRAPH_INSETS.getRight(), heightNormal);
-        ctx.strokeLine( 3 * GRAPH_INSETS.getLeft(), minNormal, width - GRAPH_INSETS.getRight(), minNormal);
-        ctx.strokeLine(3 * GRAPH_INSETS.getLeft(), maxNormal, width - GRAPH_INSETS.getRight(), maxNormal);
-
-        // Draw delta chart
-        ctx.setLineDashes();
-        if (deltaChartVisible) {
-            ctx.setStroke(darkMode ? Constants.BRIGHT_TEXT : Constants.DARK_TEXT);
-            ctx.setLineWidth(0.5);
-            double offsetX  = GRAPH_INSETS.getLeft() + (availableWidth - Constants.DELTA_CHART_WIDTH) * 0.5;
-            double factorY  = Constants.DELTA_CHART_HEIGHT / Math.max(Math.abs(deltaMax), Math.abs(deltaMin));
-            double boxWidth = 5;
-            double spacer   = 5;
-            double zeroY    = GRAPH_INSETS.getTop() + 50;
-            if (deltas.size() > 0) {
-                for (int i = 0; i < 12; i++) {
-                    double delta = MILLIGRAM_PER_DECILITER == currentUnit ? deltas.get(i) : Helper.mgPerDeciliterToMmolPerLiter(deltas.get(i));
-                    ctx.strokeRect(offsetX + i * (boxWidth + spacer), delta > 0 ? zeroY - Math.abs(delta * factorY) : zeroY, boxWidth, Math.abs(delta) * factorY);
-                }
+        if (null == data || data.interval() != currentInterval || data.envelope().isEmpty()) {
+            canvas.prepare(Layer.DATA, currentInterval);
+        } else if (canvas.prepare(Layer.DATA, List.of(currentInterval, data.envelope(), entries.getLastTimestamp(), minDatelong, minAcceptableFactor, minNormalFactor, maxNormalFactor, maxAcceptableFactor))) {
+            // The line chart only changes with new data, the interval, the thresholds, the size and when the chart moved by a pixel
+            Downsampler.Envelope envelope = data.envelope();
+            double               lastY    = (height - GRAPH_INSETS.getBottom()) - entries.getSgv(entries.size() - 1) * stepY;
+            GraphicsContext      ctx      = canvas.getGraphicsContext(Layer.DATA);
+            ctx.setLineDashes();
+            ctx.setStroke(new LinearGradient(0, GRAPH_INSETS.getTop(), 0, height - GRAPH_INSETS.getBottom(), false, CycleMethod.NO_CYCLE,
+                                             new Stop(0.0, Constants.RED),
+                                             new Stop(Constants.DEFAULT_MAX_CRITICAL_FACTOR, Constants.RED),
+                                             new Stop(maxAcceptableFactor, Constants.ORANGE),
+                                             new Stop(maxNormalFactor, Constants.GREEN),
+                                             new Stop(minNormalFactor, Constants.GREEN),
+                                             new Stop(minAcceptableFactor, Constants.ORANGE),
+                                             new Stop(Constants.DEFAULT_MIN_CRITICAL_FACTOR, Constants.RED),
+                                             new Stop(1.0, Constants.RED)));
+            ctx.setLineWidth(currentInterval.getLineWidth());
+            ctx.beginPath();
+            ctx.moveTo(GRAPH_INSETS.getLeft(), height - GRAPH_INSETS.getBottom() - envelope.getSgv(0) * stepY);
+            for (int i = 0 ; i < envelope.size() ; i++) {
+                ctx.lineTo(GRAPH_INSETS.getLeft() + (envelope.getDatelong(i) - minDatelong) * stepX, (height - GRAPH_INSETS.getBottom()) - envelope.getSgv(i) * stepY);
             }
+            ctx.lineTo(width - GRAPH_INSETS.getRight(), lastY);
+            ctx.stroke();
         }
 
-        // Draw line chart
-        ctx.setLineDashes();
-        ctx.setStroke(new LinearGradient(0, GRAPH_INSETS.getTop(), 0, height - GRAPH_INSETS.getBottom(), false, CycleMethod.NO_CYCLE,
-                                         new Stop(0.0, Constants.RED),
-                                         new Stop(Constants.DEFAULT_MAX_CRITICAL_FACTOR, Constants.RED),
-                                         new Stop(maxAcceptableFactor, Constants.ORANGE),
-                                         new Stop(maxNormalFactor, Constants.GREEN),
-                                         new Stop(minNormalFactor, Constants.GREEN),
-                                         new Stop(minAcceptableFactor, Constants.ORANGE),
-                                         new Stop(Constants.DEFAULT_MIN_CRITICAL_FACTOR, Constants.RED),
-                                         new Stop(1.0, Constants.RED)));
-
-        ctx.setLineWidth(currentInterval.getLineWidth());
-        ctx.beginPath();
-        ctx.moveTo(GRAPH_INSETS.getLeft() + startX, height - GRAPH_INSETS.getBottom() - entries.get(0).sgv() * stepY);
-        for (int i = 0 ; i < entries.size() ; i++) {
-            GlucoEntry entry = entries.get(i);
-            ctx.lineTo(GRAPH_INSETS.getLeft() + startX + (entry.datelong() - minEntry.datelong()) * stepX, (height - GRAPH_INSETS.getBottom()) - entry.sgv() * stepY);
-        }
-        ctx.lineTo(width - GRAPH_INSETS.getRight(), (height - GRAPH_INSETS.getBottom()) - entries.get(entries.size() - 1).sgv() * stepY);
-        ctx.stroke();
+        // Delta chart and average line
+        if (canvas.prepare(Layer.OVERLAY, List.of(currentUnit, darkMode, deltaChartVisible, List.copyOf(deltas), avg))) {
+            GraphicsContext ctx = canvas.getGraphicsContext(Layer.OVERLAY);
+
+            // Draw delta chart
+            ctx.setLineDashes();
+            if (deltaChartVisible) {
+                ctx.setStroke(darkMode ? Constants.BRIGHT_TEXT : Constants.DARK_TEXT);
+                ctx.setLineWidth(0.5);
+                double offsetX  = GRAPH_INSETS.getLeft() + (availableWidth - Constants.DELTA_CHART_WIDTH) * 0.5;
+                double factorY  = Constants.DELTA_CHART_HEIGHT / Math.max(Math.abs(deltaMax), Math.abs(deltaMin));
+                double boxWidth = 5;
+                double spacer   = 5;
+                double zeroY    = GRAPH_INSETS.getTop() + 50;
+                if (deltas.size() > 0) {
+                    for (int i = 0; i < 12; i++) {
+                        double delta = MILLIGRAM_PER_DECILITER == currentUnit ? deltas.get(i) : Helper.mgPerDeciliterToMmolPerLiter(deltas.get(i));
+                        ctx.strokeRect(offsetX + i * (boxWidth + spacer), delta > 0 ? zeroY - Math.abs(delta * factorY) : zeroY, boxWidth, Math.abs(delta) * factorY);
+                    }
+                }
+            }
 
-        // Draw average
-        double average;
-        if (UnitDefinition.MILLIGRAM_PER_DECILITER == currentUnit) {
-            average = (height - GRAPH_INSETS.getBottom()) - avg * stepY;
-        } else {
-            average = (height - GRAPH_INSETS.getBottom()) - (Helper.mmolPerLiterToMgPerDeciliter(avg)) * stepY;
+            // Draw average
+            double average;
+            if (UnitDefinition.MILLIGRAM_PER_DECILITER == currentUnit) {
+                average = (height - GRAPH_INSETS.getBottom()) - avg * stepY;
+            } else {
+                average = (height - GRAPH_INSETS.getBottom()) - (Helper.mmolPerLiterToMgPerDeciliter(avg)) * stepY;
+            }
+            ctx.setLineDashes(2,6);
+            ctx.setLineWidth(darkMode ? 2.0 : 2.5);
+            ctx.setStroke(darkMode ? Color.WHITE : Color.BLACK);
+            ctx.strokeLine(GRAPH_INSETS.getLeft() * 3, average, width - GRAPH_INSETS.getRight(), average);
         }
-        ctx.setLineDashes(2,6);
-        ctx.setLineWidth(darkMode ? 2.0 : 2.5);
-        ctx.setStroke(darkMode ? Color.WHITE : Color.BLACK);
-        ctx.strokeLine(GRAPH_INSETS.getLeft() * 3, average, width - GRAPH_INSETS.getRight(), average);
     }
 
     private void speak(final String voice, final String msg) {
@@ -2191,12 +2258,12 @@ public class Main extends Application {
     private void showTimeInRangeChart() {
         if (dialogVisible.get()) { return; }
         dialogVisible.set(true);
-        double noOfValues = entries.size();
-        double pTooHigh = (entries.stream().filter(entry -> entry.sgv() > Constants.DEFAULT_MAX_CRITICAL).count() / noOfValues);
-        double pHigh    = (entries.stream().filter(entry -> entry.sgv() > PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_NORMAL)).filter(entry -> entry.sgv() <= PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_CRITICAL)).count() / noOfValues);
-        double pNormal  = (entries.stream().filter(entry -> entry.sgv() > PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_NORMAL)).filter(entry -> entry.sgv() <= PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_NORMAL)).count() / noOfValues);
-        double pLow     = (entries.stream().filter(entry -> entry.sgv() > Constants.DEFAULT_MIN_CRITICAL).filter(entry -> entry.sgv() <= PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_NORMAL)).count() / noOfValues);
-        double pTooLow  = (entries.stream().filter(entry -> entry.sgv() < Constants.DEFAULT_MIN_CRITICAL).count() / noOfValues);
+        IntervalAggregates.Aggregate aggregate = snapshot.get().get(currentInterval).aggregate();
+        double pTooHigh = aggregate.pTooHigh();
+        double pHigh    = aggregate.pHigh();
+        double pNormal  = aggregate.pNormal();
+        double pLow     = aggregate.pLow();
+        double pTooLow  = aggregate.pTooLow();
 
         MacosLabel titleLabel = createLabel(translator.get(I18nKeys.STATISTICS_TITLE), 24, true, false, Pos.CENTER);
         titleLabel.setTextFill(darkMode ? Constants.BRIGHT_TEXT : Constants.DARK_TEXT);
@@ -2312,24 +2379,23 @@ public class Main extends Application {
 
     // ******************** Pattern Chart *************************************
     private void showPatternChart() {
-        if (dialogVisible.get()) { return; }
+        AnalysisSnapshot.IntervalAnalysis analysis     = snapshot.get().getPattern(currentInterval);
+        Interval                          usedInterval = analysis.interval();
+        // There is nothing to draw before the first snapshot with entries has been published
+        if (dialogVisible.get() || analysis.patternPaths().isEmpty()) { return; }
         dialogVisible.set(true);
 
-        Interval usedInterval;
-        switch(currentInterval) {
-            case LAST_3_HOURS, LAST_6_HOURS, LAST_12_HOURS, LAST_24_HOURS, LAST_48_HOURS, LAST_72_HOURS, LAST_168_HOURS -> usedInterval = Interval.LAST_168_HOURS;
-            default                                                                                                     -> usedInterval = currentInterval;
-        }
-        long limit = OffsetDateTime.now().toEpochSecond() - usedInterval.getSeconds();
-        List<GlucoEntry> filteredEntries = allEntries.stream().filter(entry -> entry.datelong() > limit).collect(Collectors.toList());
-
         MacosLabel titleLabel = createLabel(new StringBuilder().append(translator.get(I18nKeys.PATTERN_TITLE)).append(" (").append(usedInterval.getUiString()).append(")").toString(), 24, true, false, Pos.CENTER);
         titleLabel.setTextFill(darkMode ? Constants.BRIGHT_TEXT : Constants.DARK_TEXT);
 
-        MacosLabel hba1cLabel = createLabel(String.format(Locale.US, "HbA1c %.1f%% " + " (" + usedInterval.getUiString() + ")", Helper.calcHbA1c(filteredEntries)), 20, false, false, Pos.CENTER);
+        MacosLabel hba1cLabel = createLabel(String.format(Locale.US, "HbA1c %.1f%% " + " (" + usedInterval.getUiString() + ")", analysis.aggregate().hba1c()), 20, false, false, Pos.CENTER);
         hba1cLabel.setTextFill(darkMode ? Constants.BRIGHT_TEXT : Constants.DARK_TEXT);
 
-        Map<LocalTime, DataPoint>        dataMap         = Statistics.analyze(filteredEntries);
+        MacosLabel metricsLabel = createLabel(createMetricsText(analysis.metrics()), 14, false, false, Pos.CENTER);
+        metricsLabel.setTextAlignment(TextAlignment.CENTER);
+        metricsLabel.setTextFill(darkMode ? Constants.BRIGHT_TEXT : Constants.DARK_TEXT);
+
+        Map<LocalTime, DataPoint>        dataMap         = analysis.pattern();
         Pair<List<String>, List<String>> highAndLowZones = Statistics.findTimesWithLowAndHighValues(dataMap, PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_ACCEPTABLE, 70), PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_ACCEPTABLE, 140));
         List<String>                     lowZones        = highAndLowZones.getA();
         List<String>                     highZones       = highAndLowZones.getB();
@@ -2359,10 +2425,14 @@ public class Main extends Application {
 
         List<String> yAxisLabels = MILLIGRAM_PER_DECILITER == currentUnit ? Constants.yAxisLabelsMgPerDeciliter : Constants.yAxisLabelsMmolPerLiter;
 
-        // Draw vertical grid lines
         double stepX = availableWidth / 24;
         double stepY = availableHeight / (Constants.DEFAULT_GLUCO_RANGE);
 
+        // Draw nights
+        double secondStepX = availableWidth / Constants.SECONDS_PER_DAY;
+        ctx.setFill(darkMode ? Color.rgb(255, 255, 255, 0.1) : Color.rgb(0, 0, 0, 0.1));
+        TimeAxis.getNightsOfDay().forEach(night -> ctx.fillRect(GRAPH_INSETS.getLeft() + night.start() * secondStepX, GRAPH_INSETS.getTop(), night.length() * secondStepX, availableHeight));
+
         // Draw vertical grid lines
         ctx.setFill(darkMode ? Constants.BRIGHT_TEXT : Constants.DARK_TEXT);
         ctx.setTextAlign(TextAlignment.CENTER);
@@ -2385,9 +2455,10 @@ public class Main extends Application {
         ctx.setLineDashes();
         ctx.setStroke(darkMode ? Color.rgb(255, 255, 255, 0.5) : Color.rgb(0, 0, 0, 0.5));
         ctx.setFill(darkMode ? Color.rgb(255, 255, 255, 0.1) : Color.rgb(0, 0, 0, 0.1));
-        Pair<List<Point>, List<Point>> pair      = Helper.createValueRangePath(dataMap, StatisticRange.TEN_TO_NINETY, true);
-        List<Point>                    maxPoints = pair.getA();
-        List<Point> minPoints = pair.getB();
+        // The paths are computed with the snapshot in the background, here they are only drawn
+        AnalysisSnapshot.PatternPaths patternPaths = analysis.patternPaths();
+        List<Point>                   maxPoints    = patternPaths.maxPoints();
+        List<Point>                   minPoints    = patternPaths.minPoints();
 
         // Envelope curve upper part
         ctx.moveTo(GRAPH_INSETS.getLeft() + maxPoints.get(0).getX() * chartStepX, (height - GRAPH_INSETS.getBottom()) - maxPoints.get(0).getY() * stepY);
@@ -2409,7 +2480,7 @@ public class Main extends Application {
         ctx.stroke();
 
         // Draw line chart
-        List<Point> avgPoints = Helper.createAveragePath(dataMap, StatisticCalculation.MEDIAN, true);
+        List<Point> avgPoints = patternPaths.medianPoints();
         ctx.setStroke(new LinearGradient(0, GRAPH_INSETS.getTop(), 0, height - GRAPH_INSETS.getBottom(), false, CycleMethod.NO_CYCLE,
                                          new Stop(0.0, Constants.RED),
                                          new Stop(Constants.DEFAULT_MAX_CRITICAL_FACTOR, Constants.RED),
@@ -2429,7 +2500,14 @@ public class Main extends Application {
         });
         ctx.stroke();
 
-        VBox content = new VBox(20, titleLabel, hba1cLabel, zones, canvas);
+        // Accuracy of the percentiles
+        double valueError = MILLIGRAM_PER_DECILITER == currentUnit ? analysis.patternValueError() : Helper.mgPerDeciliterToMmolPerLiter(analysis.patternValueError());
+        ctx.setFont(smallTicklabelFont);
+        ctx.setFill(darkMode ? Constants.BRIGHT_TEXT : Constants.DARK_TEXT);
+        ctx.setTextAlign(TextAlignment.RIGHT);
+        ctx.fillText(String.format(Locale.US, MILLIGRAM_PER_DECILITER == currentUnit ? "\u00B1%.1f %s" : "\u00B1%.2f %s", valueError, currentUnit.UNIT.getUnitShort()), width - GRAPH_INSETS.getRight(), GRAPH_INSETS.getTop() + 10);
+
+        VBox content = new VBox(20, titleLabel, hba1cLabel, metricsLabel, zones, canvas);
         content.setAlignment(Pos.CENTER);
         content.setBackground(new Background(new BackgroundFill(Color.TRANSPARENT, new CornerRadii(10), Insets.EMPTY)));
 
@@ -2484,6 +2562,21 @@ public class Main extends Application {
     }
 
 
+    private String createMetricsText(final GlycemicMetrics metrics) {
+        final boolean mgPerDeciliter = MILLIGRAM_PER_DECILITER == currentUnit;
+        final String  unitShort      = currentUnit.UNIT.getUnitShort();
+        final String  valueFormat    = mgPerDeciliter ? "%.0f " + unitShort : "%.1f " + unitShort;
+        final double  mage           = mgPerDeciliter ? metrics.mage()  : Helper.mgPerDeciliterToMmolPerLiter(metrics.mage());
+        final double  modd           = mgPerDeciliter ? metrics.modd()  : Helper.mgPerDeciliterToMmolPerLiter(metrics.modd());
+        final double  conga          = mgPerDeciliter ? metrics.conga() : Helper.mgPerDeciliterToMmolPerLiter(metrics.conga());
+        return new StringBuilder().append(String.format(Locale.US, "CV %.1f%%   GMI %.1f%%   MAGE " + valueFormat + "   MODD " + valueFormat + "   CONGA " + valueFormat, metrics.cv(), metrics.gmi(), mage, modd, conga))
+                                  .append("\n")
+                                  .append(String.format(Locale.US, "LBGI %.1f   HBGI %.1f   TBR %.1f%% / %.1f%%   TIR %.1f%%   TAR %.1f%% / %.1f%%", metrics.lbgi(), metrics.hbgi(),
+                                                        metrics.pTooLow() * 100, metrics.pLow() * 100, metrics.pNormal() * 100, metrics.pHigh() * 100, metrics.pTooHigh() * 100))
+                                  .toString();
+    }
+
+
     // ******************** Matrix Chart **************************************
     private void showMatrixChart() {
         if (dialogVisible.get()) { return; }
@@ -2495,10 +2588,10 @@ public class Main extends Application {
         MacosLabel subTitleLabel = createLabel(translator.get(I18nKeys.MATRIX_SUBTITLE), 16, false, false, Pos.CENTER);
         subTitleLabel.setTextFill(darkMode ? Constants.BRIGHT_TEXT : Constants.DARK_TEXT);
 
-        MacosLabel hba1cLabel = createLabel(String.format(Locale.US, "HbA1c %.1f%% " + " (" + INTERVAL.getUiString() + ")", Helper.calcHbA1c(allEntries)), 20, false, false, Pos.CENTER);
+        MacosLabel hba1cLabel = createLabel(String.format(Locale.US, "HbA1c %.1f%% " + " (" + INTERVAL.getUiString() + ")", snapshot.get().getHbA1c()), 20, false, false, Pos.CENTER);
         hba1cLabel.setTextFill(darkMode ? Constants.BRIGHT_TEXT : Constants.DARK_TEXT);
 
-        ThirtyDayView thirtyDayView = new ThirtyDayView(allEntries, currentUnit);
+        ThirtyDayView thirtyDayView = new ThirtyDayView(snapshot.get().getDayIndex(), currentUnit);
         thirtyDayView.setDark(darkMode);
 
         VBox content = new VBox(20, titleLabel, subTitleLabel, hba1cLabel, thirtyDayView);
@@ -2552,7 +2645,15 @@ public class Main extends Application {
         Stage dialogStage = (Stage) dialogPane.getScene().getWindow();
         dialogStage.setAlwaysOnTop(true);
         dialogStage.toFront();
+
+        // Older history might still stream in while the dialog is open
+        InvalidationListener snapshotListener = o -> Platform.runLater(() -> {
+            hba1cLabel.setText(String.format(Locale.US, "HbA1c %.1f%% " + " (" + INTERVAL.getUiString() + ")", snapshot.get().getHbA1c()));
+            thirtyDayView.setDayIndex(snapshot.get().getDayIndex(), currentUnit);
+        });
+        snapshot.addListener(snapshotListener);
         dialog.showAndWait();
+        snapshot.removeListener(snapshotListener);
     }
 
 
@@ -2566,13 +2667,13 @@ public class Main extends Application {
         MacosLabel subTitleLabel = createLabel(translator.get(I18nKeys.STACKED_CHART_SUBTITLE), 16, false, false, Pos.CENTER);
         subTitleLabel.setTextFill(darkMode ? Constants.BRIGHT_TEXT : Constants.DARK_TEXT);
 
-        MacosLabel hba1cLabel = createLabel(String.format(Locale.US, "HbA1c %.1f%% " + " (" + INTERVAL.getUiString() + ")", Helper.calcHbA1c(allEntries)), 20, false, false, Pos.CENTER);
+        MacosLabel hba1cLabel = createLabel(String.format(Locale.US, "HbA1c %.1f%% " + " (" + INTERVAL.getUiString() + ")", snapshot.get().getHbA1c()), 20, false, false, Pos.CENTER);
         hba1cLabel.setTextFill(darkMode ? Constants.BRIGHT_TEXT : Constants.DARK_TEXT);
 
         StackedLineChart stackedLineChart = new StackedLineChart();
         stackedLineChart.setPrefSize(700, 400);
         stackedLineChart.setDarkMode(darkMode);
-        stackedLineChart.setEntries(currentUnit, allEntries);
+        stackedLineChart.setEntries(currentUnit, snapshot.get().getView());
 
         VBox content = new VBox(20, titleLabel, subTitleLabel, hba1cLabel, stackedLineChart);
         content.setAlignment(Pos.CENTER);
@@ -2626,12 +2727,24 @@ public class Main extends Application {
         dialogStage.setAlwaysOnTop(true);
         dialogStage.toFront();
 
+        // Older history might still stream in while the dialog is open
+        InvalidationListener snapshotListener = o -> Platform.runLater(() -> {
+            hba1cLabel.setText(String.format(Locale.US, "HbA1c %.1f%% " + " (" + INTERVAL.getUiString() + ")", snapshot.get().getHbA1c()));
+            stackedLineChart.setEntries(currentUnit, snapshot.get().getView());
+        });
+        snapshot.addListener(snapshotListener);
         dialogVisible.set(true);
         dialog.showAndWait();
+        snapshot.removeListener(snapshotListener);
     }
 
 
     public static void main(String[] args) {
         launch(args);
     }
+
+
+    // ******************** Inner Classes *************************************
+    // Envelope of the main chart and the state it was created for
+    private record ChartData(Interval interval, int pixels, long minDatelong, long lastTimestamp, Downsampler.Envelope envelope) {}
 }
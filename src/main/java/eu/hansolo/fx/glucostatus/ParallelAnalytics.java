@@ -0,0 +1,223 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import eu.hansolo.fx.glucostatus.DayIndex.DaySummary;
+
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+
+/**
+ * Analyzes long histories on a ForkJoinPool. The view is split recursively at day boundaries
+ * until the parts are small enough, every part is analyzed sequentially into a Result and the
+ * results are merged on the way back up (counts and sums are added, the time of day sketches
+ * are merged bin by bin and the day summaries of a day that has been split are combined).
+ */
+public class ParallelAnalytics {
+    public  static final int          MIN_ENTRIES_PER_TASK = 14 * 288; // about 14 days
+    // Number of tasks per worker thread, more tasks balance the load better but need more merges
+    private static final int          TASKS_PER_THREAD     = 4;
+    private        final ForkJoinPool pool;
+
+
+    // ******************** Constructors **************************************
+    public ParallelAnalytics() {
+        this(ForkJoinPool.commonPool());
+    }
+    public ParallelAnalytics(final ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+
+    // ******************** Methods *******************************************
+    public ForkJoinPool getPool() { return pool; }
+
+    public Result analyze(final GlucoSeries.View view) { return analyze(view, ThresholdProfile.getCurrent()); }
+    /**
+     * Analyzes the given readings in parallel
+     * @param view readings sorted by date in ascending order
+     * @param profile thresholds for the time in range and the day summaries
+     * @return the merged result of all parts
+     */
+    public Result analyze(final GlucoSeries.View view, final ThresholdProfile profile) {
+        return pool.invoke(new AnalyticsTask(view, profile, ZoneId.systemDefault().getRules(), getEntriesPerTask(view), true));
+    }
+
+    // Only the time of day sketches, used by PatternSketch to rebuild long windows
+    QuantileSketch[] analyzeBuckets(final GlucoSeries.View view, final ZoneRules zoneRules) {
+        return pool.invoke(new AnalyticsTask(view, ThresholdProfile.getCurrent(), zoneRules, getEntriesPerTask(view), false)).buckets;
+    }
+
+
+    // ******************** Private Methods ***********************************
+    private int getEntriesPerTask(final GlucoSeries.View view) {
+        return Math.max(MIN_ENTRIES_PER_TASK, view.size() / (TASKS_PER_THREAD * pool.getParallelism()));
+    }
+
+
+    // ******************** Inner Classes *************************************
+    public static final class Result {
+        private final ThresholdProfile               profile;
+        private final QuantileSketch[]               buckets;
+        private final NavigableMap<Long, DaySummary> days;
+        private       long                           count;
+        private       double                         sum;
+        private       double                         sumOfSquares;
+        private       double                         min;
+        private       double                         max;
+        private       long                           tooLow;
+        private       long                           low;
+        private       long                           normal;
+        private       long                           high;
+        private       long                           tooHigh;
+
+
+        // ******************** Constructors **********************************
+        private Result(final ThresholdProfile profile) {
+            this.profile = profile;
+            this.buckets = new QuantileSketch[Statistics.NO_OF_BUCKETS];
+            for (int i = 0 ; i < buckets.length ; i++) { buckets[i] = new QuantileSketch(); }
+            this.days    = new TreeMap<>();
+            this.min     = Double.MAX_VALUE;
+            this.max     = -Double.MAX_VALUE;
+        }
+
+
+        // ******************** Methods ***************************************
+        public long getCount() { return count; }
+
+        public double getAverage() { return 0 == count ? 0 : sum / count; }
+
+        // Population standard deviation
+        public double getStdDev() { return 0 == count ? 0 : Math.sqrt(Math.max(0, sumOfSquares / count - getAverage() * getAverage())); }
+
+        public double getMin() { return 0 == count ? 0 : min; }
+
+        public double getMax() { return 0 == count ? 0 : max; }
+
+        public double getHbA1c() { return 0 == count ? 0 : Helper.calcHbA1c(getAverage()); }
+
+        public double pTooLow() { return 0 == count ? 0 : (double) tooLow / count; }
+
+        public double pLow() { return 0 == count ? 0 : (double) low / count; }
+
+        public double pNormal() { return 0 == count ? 0 : (double) normal / count; }
+
+        public double pHigh() { return 0 == count ? 0 : (double) high / count; }
+
+        public double pTooHigh() { return 0 == count ? 0 : (double) tooHigh / count; }
+
+        // Same structure as Statistics.analyze()
+        public Map<LocalTime, DataPoint> getDataMap() { return PatternSketch.toDataMap(buckets); }
+
+        public DayIndex getDayIndex() { return new DayIndex(new TreeMap<>(days), profile); }
+
+
+        // ******************** Private Methods *******************************
+        private void add(final GlucoSeries.View view, final ZoneRules zoneRules, final boolean withDays) {
+            for (int i = 0 ; i < view.size() ; i++) {
+                final long   datelong = view.getDatelong(i);
+                final double value    = view.getSgv(i);
+                count++;
+                sum          += value;
+                sumOfSquares += value * value;
+                if (value < min) { min = value; }
+                if (value > max) { max = value; }
+                switch (profile.getZone(value)) {
+                    case TOO_LOW  -> tooLow++;
+                    case LOW      -> low++;
+                    case NORMAL   -> normal++;
+                    case HIGH     -> high++;
+                    case TOO_HIGH -> tooHigh++;
+                }
+                buckets[PatternSketch.getBucket(zoneRules, datelong)].add(value);
+            }
+            if (!withDays) { return; }
+            // Readings are sorted, so every day is one range of the view
+            int from = 0;
+            while (from < view.size()) {
+                final long epochDay = DayIndex.toEpochDay(view.getDatelong(from));
+                final int  to       = view.range(Long.MIN_VALUE, DayIndex.getStartOfDay(epochDay + 1)).size();
+                days.merge(epochDay, DayIndex.summarize(epochDay, view.subList(from, to), profile), DaySummary::merge);
+                from = to;
+            }
+        }
+
+        private void merge(final Result other) {
+            count        += other.count;
+            sum          += other.sum;
+            sumOfSquares += other.sumOfSquares;
+            min           = Math.min(min, other.min);
+            max           = Math.max(max, other.max);
+            tooLow       += other.tooLow;
+            low          += other.low;
+            normal       += other.normal;
+            high         += other.high;
+            tooHigh      += other.tooHigh;
+            for (int i = 0 ; i < buckets.length ; i++) { buckets[i].merge(other.buckets[i]); }
+            other.days.forEach((epochDay, summary) -> days.merge(epochDay, summary, DaySummary::merge));
+        }
+    }
+
+    private static class AnalyticsTask extends RecursiveTask<Result> {
+        private final GlucoSeries.View view;
+        private final ThresholdProfile profile;
+        private final ZoneRules        zoneRules;
+        private final int              entriesPerTask;
+        private final boolean          withDays;
+
+
+        // ******************** Constructors **********************************
+        AnalyticsTask(final GlucoSeries.View view, final ThresholdProfile profile, final ZoneRules zoneRules, final int entriesPerTask, final boolean withDays) {
+            this.view           = view;
+            this.profile        = profile;
+            this.zoneRules      = zoneRules;
+            this.entriesPerTask = entriesPerTask;
+            this.withDays       = withDays;
+        }
+
+
+        // ******************** Methods ***************************************
+        @Override protected Result compute() {
+            if (view.size() <= entriesPerTask) {
+                final Result result = new Result(profile);
+                result.add(view, zoneRules, withDays);
+                return result;
+            }
+            // Split at the start of the day of the middle reading, or at the middle reading if all readings are from one day
+            final long middle  = view.getDatelong(view.size() / 2);
+            long       splitAt = DayIndex.getStartOfDay(DayIndex.toEpochDay(middle));
+            if (splitAt <= view.getFirstTimestamp()) { splitAt = middle; }
+
+            final AnalyticsTask older = new AnalyticsTask(view.range(Long.MIN_VALUE, splitAt), profile, zoneRules, entriesPerTask, withDays);
+            final AnalyticsTask newer = new AnalyticsTask(view.since(splitAt), profile, zoneRules, entriesPerTask, withDays);
+            older.fork();
+            final Result result = newer.compute();
+            result.merge(older.join());
+            return result;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.zone.ZoneRules;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * One QuantileSketch per 10 minute time of day bucket (see Statistics.analyze()) for a sliding
+ * window of the given interval. Calling update() with a newer view only adds the new readings and
+ * removes the ones that left the window, so the pattern does not have to be recalculated from all entries.
+ * Long windows that have to be rebuilt (first update, backfilled history) are analyzed with ParallelAnalytics.
+ */
+public class PatternSketch {
+    // Below two tasks ParallelAnalytics would analyze the window in one task anyway
+    public  static final int               PARALLEL_THRESHOLD = 2 * ParallelAnalytics.MIN_ENTRIES_PER_TASK;
+    private static final ParallelAnalytics ANALYTICS          = new ParallelAnalytics();
+    private        final Interval          interval;
+    private        final ZoneRules         zoneRules;
+    private        final QuantileSketch[]  buckets;
+    private              GlucoSeries.View  window;
+
+
+    // ******************** Constructors **************************************
+    public PatternSketch(final Interval interval) {
+        this.interval  = interval;
+        this.zoneRules = ZoneId.systemDefault().getRules();
+        this.buckets   = new QuantileSketch[Statistics.NO_OF_BUCKETS];
+        for (int i = 0 ; i < buckets.length ; i++) { buckets[i] = new QuantileSketch(); }
+        this.window    = null;
+    }
+
+
+    // ******************** Methods *******************************************
+    public Interval getInterval() { return interval; }
+
+    /**
+     * Moves the window to the last interval (up to now) of the given view
+     * @param view all available entries sorted by date in ascending order
+     * @return this sketch
+     */
+    public synchronized PatternSketch update(final GlucoSeries.View view) {
+        final long             from      = Instant.now().getEpochSecond() - interval.getSeconds() + 1;
+        final GlucoSeries.View newWindow = view.since(from);
+        if (null == window || window.isEmpty() || newWindow.isEmpty()) {
+            rebuild(newWindow);
+            return this;
+        }
+        // The old window is an immutable view, so it still contains the entries that have to be removed
+        final GlucoSeries.View removed = window.range(Long.MIN_VALUE, from);
+        for (int i = 0 ; i < removed.size() ; i++) { buckets[getBucket(zoneRules, removed.getDatelong(i))].remove(removed.getSgv(i)); }
+        final GlucoSeries.View added = newWindow.since(window.getLastTimestamp() + 1);
+        for (int i = 0 ; i < added.size() ; i++) { buckets[getBucket(zoneRules, added.getDatelong(i))].add(added.getSgv(i)); }
+
+        // Entries that have been inserted in between (e.g. backfilled history) need a full rebuild
+        if (getCount() != newWindow.size()) {
+            rebuild(newWindow);
+        } else {
+            window = newWindow;
+        }
+        return this;
+    }
+
+    public synchronized void merge(final PatternSketch other) {
+        for (int i = 0 ; i < buckets.length ; i++) { buckets[i].merge(other.buckets[i]); }
+    }
+
+    public synchronized long getCount() {
+        long count = 0;
+        for (QuantileSketch bucket : buckets) { count += bucket.getCount(); }
+        return count;
+    }
+
+    // Maximum error of the values in the DataPoints in mg/dl
+    public synchronized double getValueError() {
+        double error = 0;
+        for (QuantileSketch bucket : buckets) { error = Math.max(error, bucket.getValueError()); }
+        return error;
+    }
+
+    // Same structure as Statistics.analyze()
+    public synchronized Map<LocalTime, DataPoint> getDataMap() { return toDataMap(buckets); }
+
+    static Map<LocalTime, DataPoint> toDataMap(final QuantileSketch[] buckets) {
+        final Map<LocalTime, DataPoint> dataMap = new HashMap<>();
+        for (int bucket = 0 ; bucket < buckets.length ; bucket++) {
+            final QuantileSketch sketch = buckets[bucket];
+            if (sketch.isEmpty()) { continue; }
+            final double    minBucketValue = sketch.getMin();
+            final double    maxBucketValue = sketch.getMax();
+            final double    avgBucketValue = minBucketValue + (maxBucketValue - minBucketValue) / 2.0;
+            final LocalTime key            = LocalTime.of(bucket / Statistics.BUCKETS_PER_HOUR, (bucket % Statistics.BUCKETS_PER_HOUR) * Statistics.BUCKET_MINUTES);
+            dataMap.put(key, new DataPoint(minBucketValue, maxBucketValue, avgBucketValue, sketch.getPercentile(10), sketch.getPercentile(25), sketch.getPercentile(75), sketch.getPercentile(90), sketch.getMedian()));
+        }
+        return dataMap;
+    }
+
+
+    // ******************** Private Methods ***********************************
+    private void rebuild(final GlucoSeries.View newWindow) {
+        for (QuantileSketch bucket : buckets) { bucket.clear(); }
+        if (newWindow.size() >= PARALLEL_THRESHOLD) {
+            final QuantileSketch[] parallelBuckets = ANALYTICS.analyzeBuckets(newWindow, zoneRules);
+            for (int i = 0 ; i < buckets.length ; i++) { buckets[i].merge(parallelBuckets[i]); }
+        } else {
+            for (int i = 0 ; i < newWindow.size() ; i++) { buckets[getBucket(zoneRules, newWindow.getDatelong(i))].add(newWindow.getSgv(i)); }
+        }
+        window = newWindow;
+    }
+
+    // Index of the time of day bucket of the given epoch seconds
+    static int getBucket(final ZoneRules zoneRules, final long datelong) {
+        final long secondOfDay = Math.floorMod(datelong + zoneRules.getOffset(Instant.ofEpochSecond(datelong)).getTotalSeconds(), (long) Constants.SECONDS_PER_DAY);
+        return (int) (secondOfDay / (Statistics.BUCKET_MINUTES * Constants.SECONDS_PER_MINUTE));
+    }
+}
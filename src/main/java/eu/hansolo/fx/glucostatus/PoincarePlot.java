@@ -21,39 +21,41 @@ import static eu.hansolo.toolbox.unit.UnitDefinition.MILLIGRAM_PER_DECILITER;
 
 @DefaultProperty("children")
 public class PoincarePlot extends Region {
-    private static final double          PREFERRED_WIDTH  = 250;
-    private static final double          PREFERRED_HEIGHT = 250;
-    private static final double          MINIMUM_WIDTH    = 50;
-    private static final double          MINIMUM_HEIGHT   = 50;
-    private static final double          MAXIMUM_WIDTH    = 1024;
-    private static final double          MAXIMUM_HEIGHT   = 1024;
-    private static final double          MIN_SYMBOL_SIZE  = 2;
-    private static final double          MAX_SYMBOL_SIZE  = 6;
-    private static final Insets          GRAPH_INSETS     = new Insets(5, 10, 5, 10);
-    private              double          size;
-    private              double          width;
-    private              double          height;
-    private              double          availableWidth;
-    private              double          availableHeight;
-    private              double          stepX;
-    private              double          stepY;
-    private              double          symbolSize;
-    private              double          halfSymbolSize;
-    private              Canvas          canvas;
-    private              GraphicsContext ctx;
-    private              Font            ticklabelFont;
-    private              double          min;
-    private              double          max;
-    private              double          range;
-    private              UnitDefinition  unit;
-    private              List<Double>    values;
+    private static final double               PREFERRED_WIDTH  = 250;
+    private static final double               PREFERRED_HEIGHT = 250;
+    private static final double               MINIMUM_WIDTH    = 50;
+    private static final double               MINIMUM_HEIGHT   = 50;
+    private static final double               MAXIMUM_WIDTH    = 1024;
+    private static final double               MAXIMUM_HEIGHT   = 1024;
+    private static final double               MIN_SYMBOL_SIZE  = 2;
+    private static final double               MAX_SYMBOL_SIZE  = 6;
+    private static final Insets               GRAPH_INSETS     = new Insets(5, 10, 5, 10);
+    private              double               size;
+    private              double               width;
+    private              double               height;
+    private              double               availableWidth;
+    private              double               availableHeight;
+    private              double               stepX;
+    private              double               stepY;
+    private              double               symbolSize;
+    private              double               halfSymbolSize;
+    private              Canvas               canvas;
+    private              GraphicsContext      ctx;
+    private              Font                 ticklabelFont;
+    private              double               min;
+    private              double               max;
+    private              double               range;
+    private              UnitDefinition       unit;
+    private              List<Double>         values;
+    private              RedrawScheduler.Task redrawTask;
 
 
     // ******************** Constructors **************************************
     public PoincarePlot() {
         loadSettings();
 
-        values = new ArrayList<>();
+        values     = new ArrayList<>();
+        redrawTask = RedrawScheduler.INSTANCE.createTask("PoincarePlot", this::redraw);
 
         initGraphics();
         registerListeners();
@@ -103,7 +105,7 @@ public class PoincarePlot extends Region {
         this.unit = currentUnit;
         this.values.clear();
         this.values.addAll(values);
-        redraw();
+        redrawTask.request();
     }
 
 
@@ -130,7 +132,7 @@ public class PoincarePlot extends Region {
             halfSymbolSize  = symbolSize * 0.5;
             ticklabelFont   = Fonts.sfProTextRegular(10);
 
-            redraw();
+            redrawTask.request();
         }
     }
 
@@ -170,12 +172,13 @@ public class PoincarePlot extends Region {
         }
 
         // Draw points
+        final ThresholdProfile profile = ThresholdProfile.getCurrent();
         for (int i = 0 ; i < values.size() - 2 ; i++) {
             final double value     = values.get(i);
             final double nextValue = values.get(i + 1);
             final double x         = value * stepX;
             final double y         = (max - nextValue + min) * stepY;
-            final Color fill       = Helper.getColorForValue(unit, UnitDefinition.MILLIGRAM_PER_DECILITER == unit ? value : Helper.mgPerDeciliterToMmolPerLiter(value));
+            final Color fill       = profile.getColor(value);
 
             ctx.setFill(fill);
             ctx.fillOval(x - halfSymbolSize, y - halfSymbolSize, symbolSize, symbolSize);
@@ -171,6 +171,7 @@ public enum PropertyManager {
             properties.put(Constants.PROPERTIES_CRITICAL_MAX_NOTIFICATION_INTERVAL, "5");
             properties.put(Constants.PROPERTIES_CRITICAL_MIN_NOTIFICATION_INTERVAL, "5");
             properties.put(Constants.PROPERTIES_DARK_MODE, "TRUE");
+            properties.put(Constants.PROPERTIES_RAW_HORIZON_DAYS, "90");
 
             properties.store(output, null);
         } catch (IOException ex) {
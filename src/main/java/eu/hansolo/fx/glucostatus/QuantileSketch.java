@@ -0,0 +1,122 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import java.util.Arrays;
+
+
+/**
+ * Mergeable quantile sketch for glucose values in mg/dl.
+ * Nightscout delivers sgv values as whole mg/dl numbers in a limited range, so a histogram
+ * with 1 mg/dl bins represents them exactly. In contrast to t-digest or KLL it also supports
+ * removing values, which is needed for sliding time windows, and merging is a simple sum of the bins.
+ * Quantiles use the nearest rank method like Statistics.getPercentile().
+ */
+public class QuantileSketch {
+    public  static final double  MIN_VALUE  = 0;
+    public  static final double  MAX_VALUE  = 600;
+    public  static final double  BIN_WIDTH  = 1;
+    private static final int     NO_OF_BINS = (int) ((MAX_VALUE - MIN_VALUE) / BIN_WIDTH) + 1;
+    private        final int[]   bins;
+    private              long    count;
+    private              boolean exact;
+
+
+    // ******************** Constructors **************************************
+    public QuantileSketch() {
+        this.bins  = new int[NO_OF_BINS];
+        this.count = 0;
+        this.exact = true;
+    }
+
+
+    // ******************** Methods *******************************************
+    public void add(final double value) {
+        bins[toBin(value)]++;
+        count++;
+        if (exact && !isExact(value)) { exact = false; }
+    }
+
+    public void remove(final double value) {
+        final int bin = toBin(value);
+        if (bins[bin] == 0) { return; }
+        bins[bin]--;
+        count--;
+    }
+
+    public void merge(final QuantileSketch other) {
+        for (int i = 0 ; i < NO_OF_BINS ; i++) { bins[i] += other.bins[i]; }
+        count += other.count;
+        exact &= other.exact;
+    }
+
+    public void clear() {
+        Arrays.fill(bins, 0);
+        count = 0;
+        exact = true;
+    }
+
+    public long getCount() { return count; }
+
+    public boolean isEmpty() { return count == 0; }
+
+    /**
+     * Maximum difference between a reported value and the real value in mg/dl.
+     * 0 as long as all values were whole numbers within the range of the sketch, otherwise half a bin width
+     * (values outside of MIN_VALUE and MAX_VALUE are reported as MIN_VALUE or MAX_VALUE).
+     * The rank of a reported quantile is always exact.
+     */
+    public double getValueError() { return exact ? 0 : BIN_WIDTH / 2.0; }
+
+    public double getMin() { return count == 0 ? 0 : valueAtRank(1); }
+
+    public double getMax() { return count == 0 ? 0 : valueAtRank(count); }
+
+    // Nearest rank percentile, percentile between 0 and 100
+    public double getPercentile(final double percentile) {
+        if (count == 0) { return 0; }
+        final long rank = (long) Math.ceil(percentile / 100.0 * count);
+        return valueAtRank(Math.max(1, Math.min(count, rank)));
+    }
+
+    public double getMedian() {
+        if (count == 0) { return 0; }
+        final long middle = count / 2 + 1;
+        return count % 2 == 0 ? (valueAtRank(middle - 1) + valueAtRank(middle)) / 2.0 : valueAtRank(middle);
+    }
+
+
+    // ******************** Private Methods ***********************************
+    private double valueAtRank(final long rank) {
+        long cumulative = 0;
+        for (int i = 0 ; i < NO_OF_BINS ; i++) {
+            cumulative += bins[i];
+            if (cumulative >= rank) { return MIN_VALUE + i * BIN_WIDTH; }
+        }
+        return MAX_VALUE;
+    }
+
+    private static int toBin(final double value) {
+        return (int) Math.round((Math.max(MIN_VALUE, Math.min(MAX_VALUE, value)) - MIN_VALUE) / BIN_WIDTH);
+    }
+
+    private static boolean isExact(final double value) {
+        return value >= MIN_VALUE && value <= MAX_VALUE && (value - MIN_VALUE) % BIN_WIDTH == 0;
+    }
+}
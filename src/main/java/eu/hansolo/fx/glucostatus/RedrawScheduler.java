@@ -0,0 +1,170 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+
+/**
+ * Coalesces redraw requests of the charts to the JavaFX pulse. Every component creates a task
+ * for its redraw method once and only requests redraws afterwards, so it is redrawn at most
+ * once per frame, no matter how many width, height or data changes came in. The timer only
+ * runs while redraws are pending. The number of requests and redraws and the time spent in
+ * redraw are recorded per component name.
+ */
+public enum RedrawScheduler {
+    INSTANCE;
+
+    private final Map<String, Counters> counters;
+    private final Queue<Task>           pending;
+    private final AtomicBoolean         running;
+    private final AnimationTimer        timer;
+
+
+    // ******************** Constructors **************************************
+    RedrawScheduler() {
+        counters = new ConcurrentHashMap<>();
+        pending  = new ConcurrentLinkedQueue<>();
+        running  = new AtomicBoolean(false);
+        timer    = new AnimationTimer() {
+            @Override public void handle(final long now) { redrawPending(); }
+        };
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Creates a task that redraws a component on the next pulse after a request
+     * @param name name of the component, tasks with the same name share their statistics
+     * @param redraw the redraw method of the component, will be called on the FX application thread
+     * @return the task that is used to request redraws
+     */
+    public Task createTask(final String name, final Runnable redraw) {
+        return new Task(redraw, counters.computeIfAbsent(name, Counters::new));
+    }
+
+    public List<Statistic> getStatistics() {
+        final List<Statistic> statistics = new ArrayList<>();
+        counters.values().forEach(c -> statistics.add(c.toStatistic()));
+        return statistics;
+    }
+
+
+    // ******************** Private Methods ***********************************
+    private void schedule(final Task task) {
+        pending.add(task);
+        if (running.getAndSet(true)) { return; }
+        if (Platform.isFxApplicationThread()) {
+            timer.start();
+        } else {
+            Platform.runLater(timer::start);
+        }
+    }
+
+    private void redrawPending() {
+        running.set(false);
+        // Only the tasks that are pending now, requests that come in while redrawing are handled on the next pulse
+        for (int i = pending.size() ; i > 0 ; i--) {
+            final Task task = pending.poll();
+            if (null == task) { break; }
+            task.run();
+        }
+        if (pending.isEmpty()) { timer.stop(); }
+    }
+
+
+    // ******************** Inner Classes *************************************
+    public static final class Task {
+        private final Runnable      redraw;
+        private final Counters      counters;
+        private final AtomicBoolean dirty;
+
+
+        // ******************** Constructors **********************************
+        private Task(final Runnable redraw, final Counters counters) {
+            this.redraw   = redraw;
+            this.counters = counters;
+            this.dirty    = new AtomicBoolean(false);
+        }
+
+
+        // ******************** Methods ***************************************
+        // Marks the component dirty, it will be redrawn once on the next pulse
+        public void request() {
+            counters.noOfRequests.increment();
+            if (dirty.getAndSet(true)) { return; }
+            INSTANCE.schedule(this);
+        }
+
+
+        // ******************** Private Methods *******************************
+        private void run() {
+            dirty.set(false);
+            final long start = System.nanoTime();
+            try {
+                redraw.run();
+            } catch (RuntimeException e) {
+                System.out.println("Error redrawing " + counters.name + ": " + e.getMessage());
+            }
+            final long nanos = System.nanoTime() - start;
+            counters.noOfRedraws.increment();
+            counters.redrawNanos.add(nanos);
+            counters.maxRedrawNanos.accumulate(nanos);
+        }
+    }
+
+    private static final class Counters {
+        private final String          name;
+        private final LongAdder       noOfRequests;
+        private final LongAdder       noOfRedraws;
+        private final LongAdder       redrawNanos;
+        private final LongAccumulator maxRedrawNanos;
+
+
+        // ******************** Constructors **********************************
+        private Counters(final String name) {
+            this.name           = name;
+            this.noOfRequests   = new LongAdder();
+            this.noOfRedraws    = new LongAdder();
+            this.redrawNanos    = new LongAdder();
+            this.maxRedrawNanos = new LongAccumulator(Math::max, 0);
+        }
+
+
+        // ******************** Methods ***************************************
+        private Statistic toStatistic() {
+            final long redraws = noOfRedraws.sum();
+            return new Statistic(name, noOfRequests.sum(), redraws, redraws == 0 ? 0 : redrawNanos.sum() / 1_000_000.0 / redraws, maxRedrawNanos.get() / 1_000_000.0);
+        }
+    }
+
+    // Number of requests and redraws and the average and maximum redraw time in ms of one component
+    public record Statistic(String name, long noOfRequests, long noOfRedraws, double averageMillis, double maxMillis) {}
+}
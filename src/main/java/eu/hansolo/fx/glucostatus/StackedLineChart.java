@@ -22,11 +22,9 @@ import javafx.scene.text.TextAlignment;
 import java.time.DayOfWeek;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
-import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
@@ -61,12 +59,14 @@ public class StackedLineChart extends Region {
     private              double                           range;
     private              UnitDefinition                   unit;
     private              boolean                          darkMode;
-    private              List<GlucoEntry>                 entries;
-    private              Map<LocalDate, List<GlucoEntry>> entryMap;
+    private              GlucoSeries.View                 entries;
+    private              Map<LocalDate, GlucoSeries.View> entryMap;
     private              int                              daysToShow;
     private              Map<DayOfWeek, Boolean>          selectedDays;
     private              List<ButtonShape>                buttonShapes;
     private              List<DayShape>                   dayShapes;
+    private              TimeAxis                         timeAxis;
+    private              RedrawScheduler.Task             redrawTask;
     private              EventHandler<MouseEvent>         mouseHandler;
 
 
@@ -75,12 +75,14 @@ public class StackedLineChart extends Region {
         loadSettings();
 
         darkMode     = PropertyManager.INSTANCE.getBoolean(Constants.PROPERTIES_DARK_MODE, true);
-        entries      = new ArrayList<>();
-        entryMap     = new HashMap<>();
+        entries      = GlucoSeries.View.EMPTY;
+        entryMap     = new TreeMap<>();
         daysToShow   = 14;
         selectedDays = new ConcurrentHashMap<>();
         buttonShapes = new CopyOnWriteArrayList<>();
         dayShapes    = new CopyOnWriteArrayList<>();
+        timeAxis     = new TimeAxis();
+        redrawTask   = RedrawScheduler.INSTANCE.createTask("StackedLineChart", this::redraw);
         mouseHandler = e -> {
             final EventType<? extends Event> type = e.getEventType();
             if (MouseEvent.MOUSE_PRESSED.equals(type)) {
@@ -90,14 +92,14 @@ public class StackedLineChart extends Region {
                     if (buttonShape.shape().contains(x, y)) {
                         this.daysToShow = buttonShape.daysToShow();
                         filter();
-                        redraw();
+                        redrawTask.request();
                     }
                 });
                 dayShapes.forEach(dayShape -> {
                     if (dayShape.shape().contains(x, y)) {
                         this.selectedDays.put(dayShape.day(), !selectedDays.get(dayShape.day()));
                         filter();
-                        redraw();
+                        redrawTask.request();
                     }
                 });
             }
@@ -158,31 +160,27 @@ public class StackedLineChart extends Region {
 
     public void setDarkMode(final boolean darkMode) {
         this.darkMode = darkMode;
-        redraw();
+        redrawTask.request();
     }
 
-    public void setEntries(final UnitDefinition currentUnit, final List<GlucoEntry> entries) {
-        this.entries.clear();
-        this.entries.addAll(entries);
+    public void setEntries(final UnitDefinition currentUnit, final GlucoSeries.View entries) {
+        // No copy needed, the view is immutable
+        this.entries = entries;
         filter();
 
         this.unit = currentUnit;
-        redraw();
+        redrawTask.request();
     }
 
-    private void filter() {
+    // Every selected day is a view on the entries that is found by binary search
+    void filter() {
         entryMap.clear();
-        final LocalDate startDate = LocalDateTime.now().minusDays(daysToShow).toLocalDate();
-        entries.stream().forEach(entry -> {
-            final LocalDate localDate = entry.date().toLocalDate();
-            if (localDate.isAfter(startDate)) {
-                if (!entryMap.keySet().contains(localDate)) { entryMap.put(localDate, new ArrayList<>()); }
-                final DayOfWeek day = localDate.getDayOfWeek();
-                if (selectedDays.get(day)) {
-                    entryMap.get(localDate).add(entry);
-                }
-            }
-        });
+        final LocalDate today = LocalDate.now();
+        for (LocalDate date = LocalDateTime.now().minusDays(daysToShow).toLocalDate().plusDays(1) ; !date.isAfter(today) ; date = date.plusDays(1)) {
+            if (!selectedDays.get(date.getDayOfWeek())) { continue; }
+            final long epochDay = date.toEpochDay();
+            entryMap.put(date, entries.range(DayIndex.getStartOfDay(epochDay), DayIndex.getStartOfDay(epochDay + 1)));
+        }
     }
 
 
@@ -206,7 +204,7 @@ public class StackedLineChart extends Region {
             stepY           = height / range;
             ticklabelFont   = Fonts.sfProTextRegular(10);
 
-            redraw();
+            redrawTask.request();
         }
     }
 
@@ -223,9 +221,9 @@ public class StackedLineChart extends Region {
         List<String> axisLabels = MILLIGRAM_PER_DECILITER == unit ? Constants.yAxisLabelsMgPerDeciliter : Constants.yAxisLabelsMmolPerLiter;
 
         // Draw nights
+        double hourStepX = availableWidth / Constants.SECONDS_PER_DAY;
         ctx.setFill(darkMode ? Color.rgb(255, 255, 255, 0.1) : Color.rgb(0, 0, 0, 0.1));
-        ctx.fillRect(GRAPH_INSETS.getLeft() + stepX, GRAPH_INSETS.getTop(), stepX * 6, availableHeight);
-        ctx.fillRect(GRAPH_INSETS.getLeft() + stepX + 20 * stepX, GRAPH_INSETS.getTop(), stepX * 4, availableHeight);
+        TimeAxis.getNightsOfDay().forEach(night -> ctx.fillRect(GRAPH_INSETS.getLeft() + stepX + night.start() * hourStepX, GRAPH_INSETS.getTop(), night.length() * hourStepX, availableHeight));
 
         ctx.setFill(darkMode ? Constants.BRIGHT_TEXT : Constants.DARK_TEXT);
         ctx.setTextAlign(TextAlignment.CENTER);
@@ -261,21 +259,20 @@ public class StackedLineChart extends Region {
 
         // Draw lines for each day
         //ctx.setLineDashes();
-        double hourStepX = availableWidth / Constants.SECONDS_PER_DAY;
-        entryMap.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(mapEntry -> {
-            List<GlucoEntry> entries = mapEntry.getValue();
-            entries.sort(Comparator.comparing(GlucoEntry::datelong));
+        // The entry map is sorted by date and every view is sorted by datelong
+        entryMap.forEach((date, dayEntries) -> {
+            ctx.setStroke(Constants.DAY_COLOR_MAP.get(date.getDayOfWeek()));
             double lastX = stepX;
             double lastY = 0;
-            for (GlucoEntry entry : entries) {
-                final double    value   = entry.sgv();
-                final double    seconds = entry.date().getHour() * 3600.0 + entry.date().getMinute() * 60 + entry.date().getSecond();
+            for (int i = 0 ; i < dayEntries.size() ; i++) {
+                final long   datelong = dayEntries.getDatelong(i);
+                final double value    = dayEntries.getSgv(i);
+                // Seconds since midnight in local time
+                final double seconds  = timeAxis.getSecondOfDay(datelong);
                 //final Color     color   = Helper.getColorForValue(unit, UnitDefinition.MILLIGRAM_PER_DECILITER == unit ? value : eu.hansolo.fx.glucostatus.Helper.mgPerDeciliterToMmolPerLiter(value));
                 //ctx.setStroke(color);
-                final DayOfWeek day     = entry.date().getDayOfWeek();
-                ctx.setStroke(Constants.DAY_COLOR_MAP.get(day));
-                final double    x       = seconds * hourStepX + stepX;
-                final double    y       = (max - value + min) * stepY;
+                final double x        = seconds * hourStepX + stepX;
+                final double y        = (max - value + min) * stepY;
                 if (lastX != stepX) {
                     ctx.strokeLine(lastX, lastY, x, y);
                 }
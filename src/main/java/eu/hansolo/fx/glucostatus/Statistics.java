@@ -23,8 +23,11 @@ import eu.hansolo.fx.glucostatus.i18n.Translator;
 import eu.hansolo.toolbox.tuples.Pair;
 
 import java.time.LocalTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.time.zone.ZoneRules;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,42 +45,90 @@ public class Statistics {
         MEDIAN
     }
 
-    public  static final DateTimeFormatter TF         = DateTimeFormatter.ofPattern("HH:mm");
-    private static final Translator        translator = new Translator(I18nKeys.RESOURCE_NAME);
-
-
+    public  static final DateTimeFormatter TF               = DateTimeFormatter.ofPattern("HH:mm");
+    public  static final int               BUCKET_MINUTES   = 10;
+    public  static final int               BUCKETS_PER_HOUR = 60 / BUCKET_MINUTES;
+    public  static final int               NO_OF_BUCKETS    = 24 * BUCKETS_PER_HOUR;
+    private static final Translator        translator       = new Translator(I18nKeys.RESOURCE_NAME);
+
+
+    /**
+     * Groups the entries by their time of day in 10 minute buckets (00:00-00:09, 00:10-00:19, ...)
+     * and calculates the DataPoint for each bucket that contains values.
+     * The entries are distributed in one pass, each bucket is sorted once and all values
+     * of the DataPoint are taken from that sorted slice.
+     * @param entries entries in any order
+     * @return DataPoint per start time of the bucket
+     */
     public static Map<LocalTime, DataPoint> analyze(final List<GlucoEntry> entries) {
+        if (entries instanceof GlucoSeries.View view) { return analyze(view); }
         if (entries.isEmpty()) { return new HashMap<>(); }
 
-        Map<LocalTime, DataPoint> dataMap  = new HashMap<>();
-        for (int hour = 0 ; hour < 24 ; hour++) {
-            for (int minute = 0 ; minute < 60 ; minute += 10) {
-                final int h = hour;
-                final int m = minute;
-                List<GlucoEntry> bucketEntries = entries.stream()
-                                                        .filter(entry -> entry.date().getHour() == h)
-                                                        .filter(entry -> entry.date().getMinute() <= m)
-                                                        .collect(Collectors.toList());
-
-                if (bucketEntries.isEmpty()) { continue; }
-
-                double minBucketValue = getMin(bucketEntries);
-                double maxBucketValue = getMax(bucketEntries);
-                double avgBucketValue = minBucketValue + (maxBucketValue - minBucketValue) / 2.0;
-                double percentile10   = getPercentile(bucketEntries, 10.0);
-                double percentile25   = getPercentile(bucketEntries, 25.0);
-                double percentile75   = getPercentile(bucketEntries, 75.0);
-                double percentile90   = getPercentile(bucketEntries, 90.0);
-                double median         = getMedian(bucketEntries);
-
-                LocalTime key   = LocalTime.of(hour, minute);
-                DataPoint value = new DataPoint(minBucketValue, maxBucketValue, avgBucketValue, percentile10, percentile25, percentile75, percentile90, median);
-                dataMap.put(key, value);
-            }
+        final int      size    = entries.size();
+        final int[]    buckets = new int[size];
+        final double[] sgvs    = new double[size];
+        int index = 0;
+        for (GlucoEntry entry : entries) {
+            buckets[index] = getBucket(entry.date().getHour(), entry.date().getMinute());
+            sgvs[index++]  = entry.sgv();
+        }
+        return analyze(buckets, sgvs);
+    }
+    /**
+     * Same as analyze(List) but reads datelong and sgv directly from the columns of the view,
+     * so no GlucoEntry is created
+     * @param view entries sorted by date in ascending order
+     * @return DataPoint per start time of the bucket
+     */
+    public static Map<LocalTime, DataPoint> analyze(final GlucoSeries.View view) {
+        if (view.isEmpty()) { return new HashMap<>(); }
+
+        final ZoneRules zoneRules = ZoneId.systemDefault().getRules();
+        final int       size      = view.size();
+        final int[]     buckets   = new int[size];
+        final double[]  sgvs      = new double[size];
+        for (int i = 0 ; i < size ; i++) {
+            buckets[i] = PatternSketch.getBucket(zoneRules, view.getDatelong(i));
+            sgvs[i]    = view.getSgv(i);
+        }
+        return analyze(buckets, sgvs);
+    }
+
+    // Bucket and sgv of every entry
+    private static Map<LocalTime, DataPoint> analyze(final int[] buckets, final double[] sgvs) {
+        // Counting sort by bucket: first the size of each bucket, then the values in bucket order
+        final int[] offsets = new int[NO_OF_BUCKETS + 1];
+        for (int bucket : buckets) { offsets[bucket + 1]++; }
+        for (int bucket = 0 ; bucket < NO_OF_BUCKETS ; bucket++) { offsets[bucket + 1] += offsets[bucket]; }
+
+        final double[] values    = new double[sgvs.length];
+        final int[]    positions = Arrays.copyOf(offsets, NO_OF_BUCKETS);
+        for (int i = 0 ; i < sgvs.length ; i++) { values[positions[buckets[i]]++] = sgvs[i]; }
+
+        final Map<LocalTime, DataPoint> dataMap = new HashMap<>();
+        for (int bucket = 0 ; bucket < NO_OF_BUCKETS ; bucket++) {
+            final int from = offsets[bucket];
+            final int to   = offsets[bucket + 1];
+            if (from == to) { continue; }
+            Arrays.sort(values, from, to);
+
+            final double minBucketValue = values[from];
+            final double maxBucketValue = values[to - 1];
+            final double avgBucketValue = minBucketValue + (maxBucketValue - minBucketValue) / 2.0;
+            final double percentile10   = getPercentile(values, from, to, 10.0);
+            final double percentile25   = getPercentile(values, from, to, 25.0);
+            final double percentile75   = getPercentile(values, from, to, 75.0);
+            final double percentile90   = getPercentile(values, from, to, 90.0);
+            final double median         = getMedian(values, from, to);
+
+            final LocalTime key = LocalTime.of(bucket / BUCKETS_PER_HOUR, (bucket % BUCKETS_PER_HOUR) * BUCKET_MINUTES);
+            dataMap.put(key, new DataPoint(minBucketValue, maxBucketValue, avgBucketValue, percentile10, percentile25, percentile75, percentile90, median));
         }
         return dataMap;
     }
 
+    public static int getBucket(final int hour, final int minute) { return hour * BUCKETS_PER_HOUR + minute / BUCKET_MINUTES; }
+
     public static Pair<List<String>, List<String>> findTimesWithLowAndHighValues(final Map<LocalTime, DataPoint> dataMap, final double minThreshold, final double maxThreshold) {
         List<LocalTime> lowDates  = new ArrayList<>();
         List<LocalTime> highDates = new ArrayList<>();
@@ -262,4 +313,16 @@ public class Statistics {
         List<Double> values = entries.stream().map(GlucoEntry::sgv).collect(Collectors.toList());
         return eu.hansolo.toolbox.Statistics.percentile(values, percentile);
     }
+
+    // Nearest rank percentile of the sorted values in [from, to)
+    private static double getPercentile(final double[] sortedValues, final int from, final int to, final double percentile) {
+        final int rank = (int) Math.ceil(percentile / 100.0 * (to - from));
+        return sortedValues[from + Math.max(1, rank) - 1];
+    }
+
+    private static double getMedian(final double[] sortedValues, final int from, final int to) {
+        final int size   = to - from;
+        final int middle = from + size / 2;
+        return size % 2 == 0 ? (sortedValues[middle - 1] + sortedValues[middle]) / 2.0 : sortedValues[middle];
+    }
 }
@@ -54,45 +54,6 @@ public enum Status {
 
 
     public static final Status getByValue(final UnitDefinition unit, final double value) {
-        switch(unit) {
-            case MILLIMOL_PER_LITER -> {
-                if (value <= Helper.mgPerDeciliterToMmolPerLiter(PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_CRITICAL))) {
-                    return TOO_LOW;
-                } else if (Helper.mgPerDeciliterToMmolPerLiter(PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_CRITICAL)) <= value && value < Helper.mgPerDeciliterToMmolPerLiter(PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_ACCEPTABLE))) {
-                    return LOW;
-                } else if (Helper.mgPerDeciliterToMmolPerLiter(PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_ACCEPTABLE)) <= value && value < Helper.mgPerDeciliterToMmolPerLiter(PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_NORMAL))) {
-                    return ACCEPTABLE_LOW;
-                } else if (Helper.mgPerDeciliterToMmolPerLiter(PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_NORMAL)) <= value && value < Helper.mgPerDeciliterToMmolPerLiter(PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_NORMAL))) {
-                    return NORMAL;
-                } else if (Helper.mgPerDeciliterToMmolPerLiter(PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_NORMAL)) <= value && value < Helper.mgPerDeciliterToMmolPerLiter(PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_ACCEPTABLE))) {
-                    return ACCEPTABLE_HIGH;
-                } else if (Helper.mgPerDeciliterToMmolPerLiter(PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_ACCEPTABLE)) <= value && value < Helper.mgPerDeciliterToMmolPerLiter(PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_CRITICAL))) {
-                    return HIGH;
-                } else if (value > Helper.mgPerDeciliterToMmolPerLiter(PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_CRITICAL))) {
-                    return TOO_HIGH;
-                } else {
-                    return NONE;
-                }
-            }
-            default -> {
-                if (value <= PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_CRITICAL)) {
-                    return TOO_LOW;
-                } else if (PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_CRITICAL) <= value && value < PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_ACCEPTABLE)) {
-                    return LOW;
-                } else if (PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_ACCEPTABLE) <= value && value < PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_NORMAL)) {
-                    return ACCEPTABLE_LOW;
-                } else if (PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_NORMAL) <= value && value < PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_NORMAL)) {
-                    return NORMAL;
-                } else if (PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_NORMAL) <= value && value < PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_ACCEPTABLE)) {
-                    return ACCEPTABLE_HIGH;
-                } else if (PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_ACCEPTABLE) <= value && value < PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_CRITICAL)) {
-                    return HIGH;
-                } else if (value > PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_CRITICAL)) {
-                    return TOO_HIGH;
-                } else {
-                    return NONE;
-                }
-            }
-        }
+        return ThresholdProfile.getCurrent().getStatus(unit, value);
     }
 }
@@ -18,7 +18,6 @@
 
  package eu.hansolo.fx.glucostatus;
 
- import eu.hansolo.toolbox.tuples.Pair;
  import eu.hansolo.toolbox.unit.UnitDefinition;
  import eu.hansolo.toolboxfx.geom.Rectangle;
  import javafx.animation.PauseTransition;
@@ -40,14 +39,9 @@
  import javafx.util.Duration;
 
  import java.time.DayOfWeek;
- import java.time.Instant;
  import java.time.LocalDate;
- import java.time.LocalTime;
- import java.time.ZoneId;
- import java.time.ZonedDateTime;
  import java.time.format.TextStyle;
  import java.time.temporal.WeekFields;
- import java.util.HashMap;
  import java.util.List;
  import java.util.Locale;
  import java.util.Map;
@@ -55,7 +49,6 @@
  import java.util.Optional;
  import java.util.concurrent.ConcurrentHashMap;
  import java.util.concurrent.CopyOnWriteArrayList;
- import java.util.stream.Collectors;
 
 
  @DefaultProperty("children")
@@ -91,6 +84,7 @@
      private              Map<LocalDate, Rectangle>          boxes;
      private              Map<Rectangle, PauseTransition>    transitionMap;
      private              List<LocalDate>                    selectedDates;
+     private              RedrawScheduler.Task               redrawTask;
 
 
      // ******************** Constructors **************************************
@@ -98,6 +92,9 @@
          this(List.of(), UnitDefinition.MILLIGRAM_PER_DECILITER);
      }
      public ThirtyDayView(final List<GlucoEntry> glucoEntries, final UnitDefinition unit) {
+         this(DayIndex.of(glucoEntries), unit);
+     }
+     public ThirtyDayView(final DayIndex dayIndex, final UnitDefinition unit) {
          this._dark             = PropertyManager.INSTANCE.getBoolean(Constants.PROPERTIES_DARK_MODE, true);
          this.avgPerDay         = new ConcurrentHashMap<>(32);
          this.timeInRangePerDay = new ConcurrentHashMap<>(32);
@@ -105,11 +102,12 @@
          this.boxes             = new ConcurrentHashMap<>();
          this.transitionMap     = new ConcurrentHashMap<>();
          this.selectedDates     = new CopyOnWriteArrayList<>();
+         this.redrawTask        = RedrawScheduler.INSTANCE.createTask("ThirtyDayView", this::redraw);
          initGraphics();
          registerListeners();
 
          pseudoClassStateChanged(DARK_PSEUDO_CLASS, _dark);
-         setEntries(glucoEntries, unit);
+         setDayIndex(dayIndex, unit);
      }
 
 
@@ -153,14 +151,14 @@
                      pause.setOnFinished(ev -> {
                          transitionMap.remove(box);
                          selectedDates.remove(date);
-                         redraw();
+                         redrawTask.request();
                      });
                      transitionMap.put(box, pause);
                  }
              } else {
                  dateBoxEntry = null;
              }
-             redraw();
+             redrawTask.request();
              if (dateBoxEntry == null) { return; }
              if (transitionMap.containsKey(dateBoxEntry.getValue())) {
                  transitionMap.get(dateBoxEntry.getValue()).play();
@@ -201,46 +199,31 @@
          return dark;
      }
 
-     public void setEntries(final List<GlucoEntry> entries, final UnitDefinition unit) {
-         this.unit = unit;
-
-         ZonedDateTime    currentDate     = ZonedDateTime.of(LocalDate.now(), LocalTime.MIDNIGHT, ZoneId.systemDefault());
-         ZonedDateTime    startDate       = currentDate.minusDays(30);
-         long             startDateLong   = startDate.toEpochSecond();
-         List<GlucoEntry> filteredEntries = entries.stream().filter(entry -> entry.datelong() >= startDateLong).collect(Collectors.toList());
+     public void setEntries(final List<GlucoEntry> entries, final UnitDefinition unit) { setDayIndex(DayIndex.of(entries), unit); }
 
-         Map<LocalDate, Pair<Double,Double>> aggregatedEntries = new HashMap<>();
-         filteredEntries.forEach(entry -> {
-             LocalDate date = ZonedDateTime.ofInstant(Instant.ofEpochSecond(entry.datelong()), ZoneId.systemDefault()).toLocalDate();
-             Optional<Entry<LocalDate, Pair<Double, Double>>> optEntry = aggregatedEntries.entrySet().stream().filter(ntry -> ntry.getKey().isEqual(date)).findFirst();
-             if (optEntry.isPresent()) {
-                 double value      = aggregatedEntries.get(optEntry.get().getKey()).getA();
-                 double noOfValues = aggregatedEntries.get(optEntry.get().getKey()).getB();
-                 aggregatedEntries.put(optEntry.get().getKey(), new Pair<>(value + entry.sgv(), noOfValues + 1.0));
-             } else {
-                 aggregatedEntries.put(date, new Pair<>(entry.sgv(), 1.0));
-             }
-         });
+     /**
+      * Reads the average and the time in range of the last 30 days from the given index,
+      * the effort only depends on the number of days and not on the number of entries.
+      * @param dayIndex per day summaries, e.g. from GlucoSeries.getDayIndex()
+      * @param unit the unit that should be used to show the values
+      */
+     public void setDayIndex(final DayIndex dayIndex, final UnitDefinition unit) {
+         this.unit = unit;
 
-         // Time in Range per day for last 30 days
-         final double minNormal = PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_NORMAL);
-         final double maxNormal = PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_NORMAL);
-         this.timeInRangePerDay.clear();
-         aggregatedEntries.entrySet().forEach(entry -> {
-             final LocalDate        date              = entry.getKey();
-             final List<GlucoEntry> entriesPerDay     = filteredEntries.stream().filter(ntry -> LocalDate.ofInstant(Instant.ofEpochSecond(ntry.datelong()), ZoneId.systemDefault()).equals(date)).collect(Collectors.toList());
-             final int              noOfEntriesPerDay = entriesPerDay.size();
-             final double           pNormal           = (double) (entriesPerDay.stream().filter(e -> e.sgv() > minNormal).filter(e -> e.sgv() <= maxNormal).count()) / noOfEntriesPerDay;
-             this.timeInRangePerDay.put(date, pNormal);
-         });
+         LocalDate currentDate = LocalDate.now();
+         LocalDate startDate   = currentDate.minusDays(30);
 
          this.avgPerDay.clear();
-         aggregatedEntries.entrySet().forEach(entry -> this.avgPerDay.put(entry.getKey(), (entry.getValue().getA() / entry.getValue().getB())));
+         this.timeInRangePerDay.clear();
+         for (DayIndex.DaySummary summary : dayIndex.getDays(startDate, currentDate)) {
+             this.avgPerDay.put(summary.getDate(), summary.getAverage());
+             this.timeInRangePerDay.put(summary.getDate(), summary.getTimeInRange());
+         }
 
          this.optBestDay  = this.avgPerDay.entrySet().stream().min(Map.Entry.comparingByValue());
          this.optWorstDay = this.avgPerDay.entrySet().stream().max(Map.Entry.comparingByValue());
 
-         redraw();
+         redrawTask.request();
      }
 
 
@@ -272,7 +255,7 @@
              boxOffset       = size * 0.01;
              doubleBoxOffset = 2 * boxOffset;
 
-             redraw();
+             redrawTask.request();
          }
      }
 
@@ -295,6 +278,8 @@
          Font      font                = Fonts.sfProRoundedRegular(fontSize);
          Font      boldFont            = Fonts.sfProRoundedBold(fontSize);
 
+         ThresholdProfile profile = ThresholdProfile.getCurrent();
+
          ctx.clearRect(0, 0, width, height);
          ctx.setStroke(foregroundColor);
          ctx.setFill(foregroundColor);
@@ -332,7 +317,7 @@
              Double value = avgPerDay.get(date);
              if (null == value) { value = 0.0; }
 
-             Color   valueColor = avgPerDay.isEmpty() ? Constants.GRAY : Helper.getColorForValue2(unit, UnitDefinition.MILLIGRAM_PER_DECILITER == unit ? value : Helper.mgPerDeciliterToMmolPerLiter(value));
+             Color   valueColor = avgPerDay.isEmpty() ? Constants.GRAY : profile.getColor2(value);
              if (avgPerDay.containsKey(date)) {
                  if (showValue) {
                      ctx.setStroke(foregroundColor);
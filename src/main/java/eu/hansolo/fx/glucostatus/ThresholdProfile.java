@@ -0,0 +1,172 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import eu.hansolo.toolbox.unit.UnitDefinition;
+import javafx.scene.paint.Color;
+
+
+/**
+ * Immutable snapshot of the thresholds from the settings in mg/dl and mmol/l.
+ * Whole mg/dl values from 0 to 600 are classified by a lookup table, all other values
+ * by comparing them with the precomputed thresholds. Call reload() after the settings changed.
+ * The zones of the time in ranges are
+ * tooLow < minCritical <= low <= minNormal < normal <= maxNormal < high <= maxCritical < tooHigh
+ */
+public final class ThresholdProfile {
+    public  static final    int              MAX_LOOKUP_VALUE = 600;
+    private static volatile ThresholdProfile current;
+    private        final    double[]         mgPerDeciliter;
+    private        final    double[]         mmolPerLiter;
+    private        final    Status[]         lookup;
+    private        final    Zone[]           zoneLookup;
+
+
+    // ******************** Constructors **************************************
+    /**
+     * All values in mg/dl
+     */
+    public ThresholdProfile(final double minCritical, final double minAcceptable, final double minNormal, final double maxNormal, final double maxAcceptable, final double maxCritical) {
+        this.mgPerDeciliter = new double[] { minCritical, minAcceptable, minNormal, maxNormal, maxAcceptable, maxCritical };
+        this.mmolPerLiter   = new double[mgPerDeciliter.length];
+        for (int i = 0 ; i < mgPerDeciliter.length ; i++) { mmolPerLiter[i] = Helper.mgPerDeciliterToMmolPerLiter(mgPerDeciliter[i]); }
+        this.lookup = new Status[MAX_LOOKUP_VALUE + 1];
+        for (int value = 0 ; value <= MAX_LOOKUP_VALUE ; value++) { lookup[value] = classify(mgPerDeciliter, value); }
+        this.zoneLookup = new Zone[MAX_LOOKUP_VALUE + 1];
+        for (int value = 0 ; value <= MAX_LOOKUP_VALUE ; value++) { zoneLookup[value] = classifyZone(mgPerDeciliter, value); }
+    }
+
+
+    // ******************** Methods *******************************************
+    public static ThresholdProfile getCurrent() {
+        ThresholdProfile profile = current;
+        if (null == profile) {
+            synchronized (ThresholdProfile.class) {
+                if (null == current) { current = fromSettings(); }
+                profile = current;
+            }
+        }
+        return profile;
+    }
+
+    public static ThresholdProfile reload() {
+        final ThresholdProfile profile = fromSettings();
+        current = profile;
+        return profile;
+    }
+
+    public static ThresholdProfile fromSettings() {
+        return new ThresholdProfile(PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_CRITICAL),
+                                    PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_ACCEPTABLE),
+                                    PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MIN_NORMAL),
+                                    PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_NORMAL),
+                                    PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_ACCEPTABLE),
+                                    PropertyManager.INSTANCE.getDouble(Constants.PROPERTIES_MAX_CRITICAL));
+    }
+
+    public double getMinCritical(final UnitDefinition unit) { return get(unit)[0]; }
+
+    public double getMinAcceptable(final UnitDefinition unit) { return get(unit)[1]; }
+
+    public double getMinNormal(final UnitDefinition unit) { return get(unit)[2]; }
+
+    public double getMaxNormal(final UnitDefinition unit) { return get(unit)[3]; }
+
+    public double getMaxAcceptable(final UnitDefinition unit) { return get(unit)[4]; }
+
+    public double getMaxCritical(final UnitDefinition unit) { return get(unit)[5]; }
+
+    /**
+     * @param unit the unit of the given value
+     * @param value the value in the given unit
+     * @return the status for the given value
+     */
+    public Status getStatus(final UnitDefinition unit, final double value) {
+        return UnitDefinition.MILLIMOL_PER_LITER == unit ? classify(mmolPerLiter, value) : getStatus(value);
+    }
+
+    // Value in mg/dl
+    public Status getStatus(final double mgPerDeciliterValue) {
+        final int index = (int) mgPerDeciliterValue;
+        if (index == mgPerDeciliterValue && index >= 0 && index <= MAX_LOOKUP_VALUE) { return lookup[index]; }
+        return classify(mgPerDeciliter, mgPerDeciliterValue);
+    }
+
+    // Zone of the time in ranges for the given value in mg/dl, used by all analyses
+    public Zone getZone(final double mgPerDeciliterValue) {
+        final int index = (int) mgPerDeciliterValue;
+        if (index == mgPerDeciliterValue && index >= 0 && index <= MAX_LOOKUP_VALUE) { return zoneLookup[index]; }
+        return classifyZone(mgPerDeciliter, mgPerDeciliterValue);
+    }
+
+    // Value in mg/dl
+    public Color getColor(final double mgPerDeciliterValue) { return getStatus(mgPerDeciliterValue).getColor(); }
+
+    // Value in mg/dl
+    public Color getColor2(final double mgPerDeciliterValue) { return getStatus(mgPerDeciliterValue).getColor2(); }
+
+
+    // ******************** Private Methods ***********************************
+    private double[] get(final UnitDefinition unit) { return UnitDefinition.MILLIMOL_PER_LITER == unit ? mmolPerLiter : mgPerDeciliter; }
+
+    // Thresholds in the order minCritical, minAcceptable, minNormal, maxNormal, maxAcceptable, maxCritical
+    private static Status classify(final double[] thresholds, final double value) {
+        if (value <= thresholds[0]) {
+            return Status.TOO_LOW;
+        } else if (thresholds[0] <= value && value < thresholds[1]) {
+            return Status.LOW;
+        } else if (thresholds[1] <= value && value < thresholds[2]) {
+            return Status.ACCEPTABLE_LOW;
+        } else if (thresholds[2] <= value && value < thresholds[3]) {
+            return Status.NORMAL;
+        } else if (thresholds[3] <= value && value < thresholds[4]) {
+            return Status.ACCEPTABLE_HIGH;
+        } else if (thresholds[4] <= value && value < thresholds[5]) {
+            return Status.HIGH;
+        } else if (value > thresholds[5]) {
+            return Status.TOO_HIGH;
+        } else {
+            return Status.NONE;
+        }
+    }
+
+    private static Zone classifyZone(final double[] thresholds, final double value) {
+        if (value < thresholds[0]) {
+            return Zone.TOO_LOW;
+        } else if (value <= thresholds[2]) {
+            return Zone.LOW;
+        } else if (value <= thresholds[3]) {
+            return Zone.NORMAL;
+        } else if (value <= thresholds[5]) {
+            return Zone.HIGH;
+        } else {
+            return Zone.TOO_HIGH;
+        }
+    }
+
+
+    // ******************** Inner Classes *************************************
+    public enum Zone {
+        TOO_LOW,
+        LOW,
+        NORMAL,
+        HIGH,
+        TOO_HIGH
+    }
+}
@@ -0,0 +1,331 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * History in three tiers: raw readings (kept in GlucoSeries for the raw horizon), hourly rollups
+ * and daily rollups. Complete hours and days are compacted from the EntryStore into rollups with
+ * count, sum, min, max, percentiles and time in range counts. Hourly rollups are kept for one year,
+ * daily rollups for the whole history, so memory and query time don't grow with the raw history.
+ * Hours and days are aligned to the system time zone.
+ */
+public class TieredHistory {
+    public  static final long             HOURLY_HORIZON = Interval.LAST_8760_HOURS.getSeconds() + Interval.LAST_24_HOURS.getSeconds();
+    private        final Tier             hourly;
+    private        final Tier             daily;
+    private              ThresholdProfile profile;
+    private              long             firstTimestamp;
+
+
+    // ******************** Constructors **************************************
+    public TieredHistory() {
+        this.hourly = new Tier(Resolution.HOURLY);
+        this.daily  = new Tier(Resolution.DAILY);
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Compacts all complete hours and days that have not been compacted yet. The tiers are rebuilt
+     * if older records have been merged into the store (e.g. by a backfill) or the ThresholdProfile changed.
+     * @param store the store that contains the whole raw history
+     */
+    public synchronized void compact(final EntryStore store) {
+        final ThresholdProfile currentProfile = ThresholdProfile.getCurrent();
+        if (currentProfile != profile) {
+            hourly.clear();
+            daily.clear();
+            profile = currentProfile;
+        }
+        final long now = Instant.now().getEpochSecond();
+        // Lock the store so that no records are merged in between reading and counting them
+        synchronized (store) {
+            hourly.compact(store, hourly.getStart(now), profile);
+            daily.compact(store, daily.getStart(now), profile);
+            firstTimestamp = store.getFirstTimestamp();
+        }
+        // Hourly rollups end at the start of a day, so they never overlap a daily rollup that is used instead
+        hourly.removeBefore(daily.getStart(now - HOURLY_HORIZON));
+    }
+
+    public synchronized void clear() {
+        hourly.clear();
+        daily.clear();
+        firstTimestamp = 0;
+    }
+
+    public synchronized boolean isEmpty() { return daily.rollups.isEmpty() && hourly.rollups.isEmpty(); }
+
+    // First timestamp in the store at the time of the last compaction
+    public synchronized long getFirstTimestamp() { return firstTimestamp; }
+
+    public synchronized List<Rollup> getRollups(final Resolution resolution, final long fromEpochSeconds, final long toEpochSeconds) {
+        final Tier tier = Resolution.DAILY == resolution ? daily : hourly;
+        return new ArrayList<>(tier.rollups.subList(tier.indexOf(fromEpochSeconds), tier.indexOf(toEpochSeconds)));
+    }
+
+    /**
+     * Mean values of the rollups of the given resolution that start at or after the given time.
+     * If the hourly rollups don't reach back far enough, the daily rollups are used.
+     * @param resolution HOURLY or DAILY
+     * @param fromEpochSeconds start of the range in epoch seconds
+     * @return one entry per rollup at the center of the rollup
+     */
+    public synchronized GlucoSeries.View getView(final Resolution resolution, final long fromEpochSeconds) {
+        if (Resolution.DAILY != resolution && !hourly.rollups.isEmpty() && hourly.getFirstStart() <= fromEpochSeconds) { return hourly.means.getViewSince(fromEpochSeconds); }
+        return daily.means.getViewSince(fromEpochSeconds);
+    }
+
+    /**
+     * Aggregate of all readings since the given time. Daily rollups are used where no hourly rollups exist,
+     * readings that have not been compacted yet are taken from the given raw entries.
+     * @param interval the interval the aggregate is for
+     * @param fromEpochSeconds start of the range in epoch seconds
+     * @param raw the raw entries sorted by date in ascending order
+     * @return the aggregate in the same form as the one of IntervalAggregates
+     */
+    public synchronized IntervalAggregates.Aggregate getAggregate(final Interval interval, final long fromEpochSeconds, final GlucoSeries.View raw) {
+        final Bucket bucket      = new Bucket(profile);
+        final long   hourlyStart = hourly.rollups.isEmpty() ? hourly.until : hourly.getFirstStart();
+        for (int i = daily.indexOf(fromEpochSeconds) ; i < daily.rollups.size() ; i++) {
+            final Rollup rollup = daily.rollups.get(i);
+            if (rollup.start() + rollup.seconds() > hourlyStart) { break; }
+            bucket.add(rollup);
+        }
+        for (int i = hourly.indexOf(fromEpochSeconds) ; i < hourly.rollups.size() ; i++) { bucket.add(hourly.rollups.get(i)); }
+        final GlucoSeries.View tail = raw.since(Math.max(fromEpochSeconds, Math.max(hourly.until, daily.until)));
+        for (int i = 0 ; i < tail.size() ; i++) { bucket.add(tail.getSgv(i)); }
+        return new IntervalAggregates.Aggregate(interval, bucket.count, bucket.sum, bucket.sumOfSquares, bucket.count == 0 ? 0 : bucket.min, bucket.count == 0 ? 0 : bucket.max,
+                                                bucket.tooLow, bucket.low, bucket.normal, bucket.high, bucket.tooHigh);
+    }
+
+    /**
+     * Returns the coarsest resolution that still has at least one value per pixel
+     * @param seconds the time range in seconds
+     * @param pixels the available width in pixels
+     * @return RAW, HOURLY or DAILY
+     */
+    public static Resolution selectResolution(final long seconds, final double pixels) {
+        final double secondsPerPixel = seconds / Math.max(1, pixels);
+        Resolution   resolution      = Resolution.RAW;
+        for (Resolution r : Resolution.values()) {
+            if (r.getSeconds() <= secondsPerPixel) { resolution = r; }
+        }
+        return resolution;
+    }
+
+
+    // ******************** Inner Classes *************************************
+    public enum Resolution {
+        RAW(300),
+        HOURLY(3_600),
+        DAILY(86_400);
+
+        private final long seconds;
+
+
+        // ******************** Constructors **********************************
+        Resolution(final long seconds) {
+            this.seconds = seconds;
+        }
+
+
+        // ******************** Methods ***************************************
+        public long getSeconds() { return seconds; }
+    }
+
+    public record Rollup(long start, long seconds, long count, double sum, double sumOfSquares, double min, double max, double p10, double p25, double p50, double p75, double p90,
+                         long tooLow, long low, long normal, long high, long tooHigh) {
+        public double mean() { return count == 0 ? 0 : sum / count; }
+
+        public double timeInRange() { return count == 0 ? 0 : (double) normal / count; }
+    }
+
+    private static class Tier {
+        private final Resolution   resolution;
+        private final List<Rollup> rollups;
+        private final GlucoSeries  means;
+        private       long         until;
+        private       int          noOfRecords;
+
+
+        // ******************** Constructors **********************************
+        Tier(final Resolution resolution) {
+            this.resolution = resolution;
+            this.rollups    = new ArrayList<>();
+            this.means      = new GlucoSeries();
+            this.until      = Long.MIN_VALUE;
+        }
+
+
+        // ******************** Methods ***************************************
+        void compact(final EntryStore store, final long cutoff, final ThresholdProfile profile) {
+            // Records before the compacted range have been merged into the store -> start over
+            if (store.indexOf(until) != noOfRecords) { clear(); }
+            if (cutoff <= until) { return; }
+
+            final List<Rollup>   added  = new ArrayList<>();
+            final Bucket         bucket = new Bucket(profile);
+            final QuantileSketch sketch = new QuantileSketch();
+            store.forEach(until, cutoff, (datelong, sgv) -> {
+                if (datelong >= bucket.end) {
+                    if (bucket.count > 0) { added.add(bucket.toRollup(sketch)); }
+                    bucket.reset(getStart(datelong), getEnd(getStart(datelong)));
+                    sketch.clear();
+                }
+                bucket.add(sgv);
+                sketch.add(sgv);
+            });
+            if (bucket.count > 0) { added.add(bucket.toRollup(sketch)); }
+
+            final List<GlucoEntry> entries = new ArrayList<>(added.size());
+            for (Rollup rollup : added) {
+                final long datelong = rollup.start() + rollup.seconds() / 2;
+                entries.add(new GlucoEntry("", rollup.mean(), datelong, OffsetDateTime.ofInstant(Instant.ofEpochSecond(datelong), ZoneId.systemDefault()), "", Trend.NONE, "", "", "sgv", 0, 0, 0, 0, 0, 0, ""));
+            }
+            rollups.addAll(added);
+            means.addAll(entries);
+            until       = cutoff;
+            noOfRecords = store.indexOf(cutoff);
+        }
+
+        void removeBefore(final long epochSeconds) {
+            final int index = indexOf(epochSeconds);
+            if (index == 0) { return; }
+            rollups.subList(0, index).clear();
+            means.removeBefore(epochSeconds);
+        }
+
+        void clear() {
+            rollups.clear();
+            means.clear();
+            until       = Long.MIN_VALUE;
+            noOfRecords = 0;
+        }
+
+        long getFirstStart() { return rollups.get(0).start(); }
+
+        // Index of the first rollup that starts at or after the given time
+        int indexOf(final long epochSeconds) {
+            int low  = 0;
+            int high = rollups.size();
+            while (low < high) {
+                final int mid = (low + high) >>> 1;
+                if (rollups.get(mid).start() < epochSeconds) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        long getStart(final long epochSeconds) {
+            if (Resolution.DAILY == resolution) { return DayIndex.getStartOfDay(DayIndex.toEpochDay(epochSeconds)); }
+            final long offset = ZoneId.systemDefault().getRules().getOffset(Instant.ofEpochSecond(epochSeconds)).getTotalSeconds();
+            return Math.floorDiv(epochSeconds + offset, resolution.getSeconds()) * resolution.getSeconds() - offset;
+        }
+
+        long getEnd(final long start) {
+            if (Resolution.DAILY == resolution) { return DayIndex.getStartOfDay(DayIndex.toEpochDay(start) + 1); }
+            return start + resolution.getSeconds();
+        }
+    }
+
+    private static class Bucket {
+        private final ThresholdProfile profile;
+        private       long             start;
+        private       long             end;
+        private       long             count;
+        private       double           sum;
+        private       double           sumOfSquares;
+        private       double           min;
+        private       double           max;
+        private       long             tooLow;
+        private       long             low;
+        private       long             normal;
+        private       long             high;
+        private       long             tooHigh;
+
+
+        // ******************** Constructors **********************************
+        Bucket(final ThresholdProfile profile) {
+            this.profile = null == profile ? ThresholdProfile.getCurrent() : profile;
+            reset(Long.MIN_VALUE, Long.MIN_VALUE);
+        }
+
+
+        // ******************** Methods ***************************************
+        void reset(final long start, final long end) {
+            this.start   = start;
+            this.end     = end;
+            count        = 0;
+            sum          = 0;
+            sumOfSquares = 0;
+            min          = Double.MAX_VALUE;
+            max          = -Double.MAX_VALUE;
+            tooLow       = 0;
+            low          = 0;
+            normal       = 0;
+            high         = 0;
+            tooHigh      = 0;
+        }
+
+        void add(final double value) {
+            count++;
+            sum          += value;
+            sumOfSquares += value * value;
+            if (value < min) { min = value; }
+            if (value > max) { max = value; }
+            switch (profile.getZone(value)) {
+                case TOO_LOW  -> tooLow++;
+                case LOW      -> low++;
+                case NORMAL   -> normal++;
+                case HIGH     -> high++;
+                case TOO_HIGH -> tooHigh++;
+            }
+        }
+
+        void add(final Rollup rollup) {
+            count        += rollup.count();
+            sum          += rollup.sum();
+            sumOfSquares += rollup.sumOfSquares();
+            min           = Math.min(min, rollup.min());
+            max           = Math.max(max, rollup.max());
+            tooLow       += rollup.tooLow();
+            low          += rollup.low();
+            normal       += rollup.normal();
+            high         += rollup.high();
+            tooHigh      += rollup.tooHigh();
+        }
+
+        Rollup toRollup(final QuantileSketch sketch) {
+            return new Rollup(start, end - start, count, sum, sumOfSquares, min, max,
+                              sketch.getPercentile(10), sketch.getPercentile(25), sketch.getPercentile(50), sketch.getPercentile(75), sketch.getPercentile(90),
+                              tooLow, low, normal, high, tooHigh);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2022 Gerrit Grunwald.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package eu.hansolo.fx.glucostatus;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.zone.ZoneOffsetTransition;
+import java.time.zone.ZoneRules;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * Calendar aware time axis for the charts. Hour ticks and night bands are computed from the
+ * offsets and transitions of the ZoneRules, so the work depends on the number of boundaries
+ * and not on the number of seconds in the visible range. Hours that are skipped or repeated
+ * at daylight saving time transitions are skipped or repeated on the axis too.
+ * Instances cache the current offset and are not thread safe.
+ */
+public final class TimeAxis {
+    public  static final int       SECONDS_PER_HOUR = (int) Constants.SECONDS_PER_HOUR;
+    public  static final int       SECONDS_PER_DAY  = (int) Constants.SECONDS_PER_DAY;
+    private        final ZoneRules rules;
+    private              long      offsetValidFrom;
+    private              long      offsetValidTo;
+    private              int       offset;
+
+
+    // ******************** Constructors **************************************
+    public TimeAxis() { this(ZoneId.systemDefault()); }
+    public TimeAxis(final ZoneId zoneId) {
+        this.rules           = zoneId.getRules();
+        this.offsetValidFrom = Long.MAX_VALUE;
+        this.offsetValidTo   = Long.MIN_VALUE;
+        this.offset          = 0;
+    }
+
+
+    // ******************** Methods *******************************************
+    /**
+     * Returns all full local hours with from < epochSecond <= to
+     * @param from start of the range in epoch seconds (exclusive)
+     * @param to end of the range in epoch seconds (inclusive)
+     * @param step only hours that are a multiple of step will be returned (1 for all hours)
+     * @return the ticks in ascending order
+     */
+    public List<Tick> getHourTicks(final long from, final long to, final int step) {
+        final List<Tick> ticks = new ArrayList<>();
+        final int        s     = Math.max(1, step);
+        long t = from;
+        while (t < to) {
+            final int  currentOffset = getOffset(t);
+            final long nextHour      = Math.floorDiv(t + currentOffset, SECONDS_PER_HOUR) * SECONDS_PER_HOUR + SECONDS_PER_HOUR - currentOffset;
+            // The offset might change before the next full hour, in that case continue at the transition
+            if (offsetValidTo <= nextHour) {
+                t = offsetValidTo;
+                if (t <= to && Math.floorMod(t + getOffset(t), SECONDS_PER_HOUR) == 0) { addTick(ticks, t, s); }
+                continue;
+            }
+            if (nextHour > to) { break; }
+            addTick(ticks, nextHour, s);
+            t = nextHour;
+        }
+        return ticks;
+    }
+
+    /**
+     * Returns the nights (from Constants.NIGHT_START to Constants.NIGHT_END local time) clipped
+     * to the given range
+     * @param from start of the range in epoch seconds
+     * @param to end of the range in epoch seconds
+     * @return the nights in ascending order
+     */
+    public List<Band> getNights(final long from, final long to) {
+        final List<Band> nights     = new ArrayList<>();
+        long             nightStart = isNight(getHour(from)) ? from : -1;
+        for (Tick tick : getHourTicks(from, to, 1)) {
+            if (-1 == nightStart && tick.hour() == Constants.NIGHT_START) {
+                nightStart = tick.epochSecond();
+            } else if (-1 != nightStart && tick.hour() == Constants.NIGHT_END) {
+                nights.add(new Band(nightStart, tick.epochSecond()));
+                nightStart = -1;
+            }
+        }
+        if (-1 != nightStart && nightStart < to) { nights.add(new Band(nightStart, to)); }
+        return nights;
+    }
+
+    // Local hour of the given epoch second
+    public int getHour(final long epochSecond) { return getSecondOfDay(epochSecond) / SECONDS_PER_HOUR; }
+
+    // Seconds since local midnight, doesn't allocate as long as the offset doesn't change
+    public int getSecondOfDay(final long epochSecond) { return (int) Math.floorMod(epochSecond + getOffset(epochSecond), (long) SECONDS_PER_DAY); }
+
+    // Nights in seconds of a day, used by the charts that show 24 hours of local time
+    public static List<Band> getNightsOfDay() {
+        return List.of(new Band(0, (long) Constants.NIGHT_END * SECONDS_PER_HOUR), new Band((long) Constants.NIGHT_START * SECONDS_PER_HOUR, SECONDS_PER_DAY));
+    }
+
+    public static boolean isNight(final int hour) { return hour >= Constants.NIGHT_START || hour < Constants.NIGHT_END; }
+
+
+    // ******************** Private Methods ***********************************
+    private int getOffset(final long epochSecond) {
+        if (epochSecond < offsetValidFrom || epochSecond >= offsetValidTo) {
+            final Instant              instant  = Instant.ofEpochSecond(epochSecond);
+            final ZoneOffsetTransition previous = rules.previousTransition(instant.plusSeconds(1));
+            final ZoneOffsetTransition next     = rules.nextTransition(instant);
+            offset          = rules.getOffset(instant).getTotalSeconds();
+            offsetValidFrom = null == previous ? Long.MIN_VALUE : previous.toEpochSecond();
+            offsetValidTo   = null == next     ? Long.MAX_VALUE : next.toEpochSecond();
+        }
+        return offset;
+    }
+
+    private void addTick(final List<Tick> ticks, final long epochSecond, final int step) {
+        final int hour = getHour(epochSecond);
+        if (hour % step == 0) { ticks.add(new Tick(epochSecond, hour)); }
+    }
+
+
+    // ******************** Inner Classes *************************************
+    public record Tick(long epochSecond, int hour) {}
+
+    // Time range with start <= t < end, either in epoch seconds or in seconds of a day
+    public record Band(long start, long end) {
+        public long length() { return end - start; }
+    }
+}
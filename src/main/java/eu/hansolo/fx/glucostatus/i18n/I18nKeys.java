@@ -32,6 +32,9 @@ public interface I18nKeys {
     String DATE_TIME_FORMAT                                  = "date_time_format";
     String DATE_FORMAT                                       = "date_format";
     String TIME_FORMAT                                       = "time_format";
+    String TIME_NAME_ALL                                     = "time_name_all";
+    String TIME_NAME_8760_HOURS                              = "time_name_8760_hours";
+    String TIME_NAME_4320_HOURS                              = "time_name_4320_hours";
     String TIME_NAME_2160_HOURS                              = "time_name_2160_hours";
     String TIME_NAME_720_HOURS                               = "time_name_720_hours";
     String TIME_NAME_336_HOURS                               = "time_name_336_hours";
@@ -42,6 +45,9 @@ public interface I18nKeys {
     String TIME_NAME_12_HOURS                                = "time_name_12_hours";
     String TIME_NAME_6_HOURS                                 = "time_name_6_hours";
     String TIME_NAME_3_HOURS                                 = "time_name_3_hours";
+    String TIME_RANGE_ALL                                    = "time_range_all";
+    String TIME_RANGE_8760_HOURS                             = "time_range_8760_hours";
+    String TIME_RANGE_4320_HOURS                             = "time_range_4320_hours";
     String TIME_RANGE_2160_HOURS                             = "time_range_2160_hours";
     String TIME_RANGE_720_HOURS                              = "time_range_720_hours";
     String TIME_RANGE_336_HOURS                              = "time_range_336_hours";